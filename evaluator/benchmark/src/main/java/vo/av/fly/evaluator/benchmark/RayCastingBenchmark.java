@@ -0,0 +1,83 @@
+package vo.av.fly.evaluator.benchmark;
+
+import org.locationtech.jts.geom.LineSegment;
+import org.openjdk.jmh.annotations.*;
+import vo.av.fly.evaluator.geom.RayCasting;
+import vo.av.fly.evaluator.geom.YTransformer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ray casting of one swath segment, from adding its points to interpolating the pulses hitting vertical structures.
+ * @author av1966
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RayCastingBenchmark {
+    @Param({"FLAT_GROUND", "SINGLE_FACADE", "STREET_CANYON", "DENSE_DOWNTOWN"})
+    public SwathSlice.Scene scene;
+
+    @Param({"4", "16", "64"})
+    public double density;
+
+    @Param({"0.03", "0.1"})
+    public double resolution;
+
+    private double[][] points;
+    private double[] x, y, z;
+    private double[] aircraftPos;
+
+    @Setup
+    public void setUp() {
+        points = SwathSlice.generate(scene, density, 1).toArray(new double[0][]);
+        x = new double[points.length];
+        y = new double[points.length];
+        z = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            x[i] = points[i][0];
+            y[i] = points[i][1];
+            z[i] = points[i][2];
+        }
+        aircraftPos = new double[]{0, 0, SwathSlice.ALTITUDE};
+    }
+
+    private RayCasting newRayCasting() {
+        return new RayCasting(
+                aircraftPos,
+                resolution,
+                -30, 30,
+                true,
+                new YTransformer(aircraftPos[1])
+        );
+    }
+
+    private RayCasting addAll() {
+        final RayCasting visibilityComputation = newRayCasting();
+        for (double[] point : points) {
+            visibilityComputation.addXYZ(point);
+        }
+        return visibilityComputation;
+    }
+
+    @Benchmark
+    public List<LineSegment> generateInterpolatedPulses() {
+        return addAll().generateInterpolatedPulses();
+    }
+
+    @Benchmark
+    public int countInterpolatedPulses() {
+        return addAll().countInterpolatedPulses();
+    }
+
+    @Benchmark
+    public int countInterpolatedPulsesBatch() {
+        final RayCasting visibilityComputation = newRayCasting();
+        visibilityComputation.add(x, y, z, x.length);
+        return visibilityComputation.countInterpolatedPulses();
+    }
+}
@@ -0,0 +1,91 @@
+package vo.av.fly.evaluator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import scala.Tuple2;
+import vo.av.fly.evaluator.PointParser;
+import vo.av.fly.evaluator.SwathAssignment;
+import vo.av.fly.evaluator.geom.ImmutableBasePoint;
+import vo.av.fly.evaluator.geom.PointBlock;
+import vo.av.fly.evaluator.geom.RigidTransform2D;
+import vo.av.fly.evaluator.geom.SwathSegmentPoints;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages before the ray casting: parsing the points of a slice and assigning them to their swath segments.
+ * @author av1966
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SwathAssignmentBenchmark {
+    @Param({"FLAT_GROUND", "SINGLE_FACADE", "STREET_CANYON", "DENSE_DOWNTOWN"})
+    public SwathSlice.Scene scene;
+
+    @Param({"4", "16", "64"})
+    public double density;
+
+    private byte[][] lineBytes;
+    private ImmutableBasePoint[] points;
+    private List<PointBlock> blocks;
+    private SwathAssignment swathAssignment;
+
+    @Setup
+    public void setUp() {
+        final List<double[]> xyz = SwathSlice.generate(scene, density, 1);
+
+        final String[] lines = SwathSlice.toLines(xyz).toArray(new String[0]);
+        lineBytes = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+        }
+        points = new ImmutableBasePoint[xyz.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = ImmutableBasePoint.valueOf(xyz.get(i));
+        }
+        final SwathSegmentPoints buffer = new SwathSegmentPoints(points.length);
+        for (ImmutableBasePoint point : points) {
+            buffer.add(point);
+        }
+        blocks = PointBlock.encode(buffer, PointBlock.MILLIMETRE);
+        swathAssignment = new SwathAssignment(
+                RigidTransform2D.valueOf(30, 0, 0),
+                SwathSlice.LINE_SPACING, SwathSlice.SLICE, SwathSlice.HALF_SWATH_WIDTH,
+                null, null
+        );
+    }
+
+    @Benchmark
+    public void parsePointBytes(Blackhole blackhole) {
+        final double[] offset = new double[]{0, 0, 0};
+        final double[] coordinate = new double[3];
+        for (byte[] line : lineBytes) {
+            PointParser.parse(line, 0, line.length, offset, coordinate);
+            blackhole.consume(ImmutableBasePoint.valueOf(coordinate));
+        }
+    }
+
+    @Benchmark
+    public void pair(Blackhole blackhole) {
+        final Iterator<Tuple2<Long, ImmutableBasePoint>> pairs = swathAssignment.call(Arrays.asList(points).iterator());
+        while (pairs.hasNext()) {
+            blackhole.consume(pairs.next());
+        }
+    }
+
+    @Benchmark
+    public void pairBlocks(Blackhole blackhole) {
+        final Iterator<Tuple2<Long, ImmutableBasePoint>> pairs = swathAssignment.call(PointBlock.points(blocks.iterator()));
+        while (pairs.hasNext()) {
+            blackhole.consume(pairs.next());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package vo.av.fly.evaluator.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic point cloud of a swath slice: the points within half a sample spacing of a flight line's cross-section,
+ * across the whole swath width.
+ * <p>
+ * The aircraft flies along the y axis over {@code x = 0}; the slice covers {@code |y| <= SLICE / 2}.
+ * @author av1966
+ */
+public class SwathSlice {
+    public static final double ALTITUDE = 300;
+    public static final double HALF_SWATH_WIDTH = ALTITUDE / 2 * 1.5;
+    public static final double SLICE = .25; // sample spacing
+    public static final double LINE_SPACING = 80;
+
+    private static final double NOISE = .03; // of the point coordinates, in metres
+
+    /**
+     * Urban scenes.
+     */
+    public enum Scene {
+        /**
+         * ground only
+         */
+        FLAT_GROUND,
+        /**
+         * one building of 40 m beside the flight line
+         */
+        SINGLE_FACADE,
+        /**
+         * two buildings of 60 m along a street of 20 m under the flight line
+         */
+        STREET_CANYON,
+        /**
+         * blocks of 20 to 200 m separated by streets of 10 to 25 m across the whole swath
+         */
+        DENSE_DOWNTOWN
+    }
+
+    private SwathSlice() {
+    }
+
+    /**
+     * Generate the points of a slice, in random order.
+     *
+     * @param scene
+     * @param density points per square metre of surface
+     * @param seed
+     * @return xyz points
+     */
+    public static List<double[]> generate(Scene scene, double density, long seed) {
+        final Random random = new Random(seed);
+        final List<double[]> points = new ArrayList();
+
+        // buildings as [from x, to x, height]
+        final List<double[]> buildings = new ArrayList();
+        switch (scene) {
+            case FLAT_GROUND:
+                break;
+            case SINGLE_FACADE:
+                buildings.add(new double[]{20, 60, 40});
+                break;
+            case STREET_CANYON:
+                buildings.add(new double[]{-70, -10, 60});
+                buildings.add(new double[]{10, 70, 60});
+                break;
+            case DENSE_DOWNTOWN:
+                double x = -HALF_SWATH_WIDTH;
+                while (x < HALF_SWATH_WIDTH) {
+                    final double width = 20 + random.nextDouble() * 30;
+                    buildings.add(new double[]{x, x + width, 20 + random.nextDouble() * 180});
+                    x += width + 10 + random.nextDouble() * 15;
+                }
+                break;
+        }
+
+        // ground between the buildings
+        double from = -HALF_SWATH_WIDTH;
+        for (double[] building : buildings) {
+            addHorizontal(points, from, building[0], 0, density, random);
+            from = building[1];
+        }
+        addHorizontal(points, from, HALF_SWATH_WIDTH, 0, density, random);
+
+        // roofs and facades
+        for (double[] building : buildings) {
+            addHorizontal(points, building[0], building[1], building[2], density, random);
+            addVertical(points, building[0], building[2], density, random);
+            addVertical(points, building[1], building[2], density, random);
+        }
+
+        Collections.shuffle(points, random);
+        return points;
+    }
+
+    /**
+     * Format points as lines of the text point cloud files.
+     *
+     * @param points
+     * @return
+     */
+    public static List<String> toLines(List<double[]> points) {
+        final List<String> lines = new ArrayList(points.size());
+        for (double[] point : points) {
+            lines.add(String.format(Locale.ROOT, "%.3f,%.3f,%.3f", point[0], point[1], point[2]));
+        }
+        return lines;
+    }
+
+    private static void addHorizontal(List<double[]> points, double fromX, double toX, double z, double density, Random random) {
+        final int n = (int) Math.round((toX - fromX) * SLICE * density);
+        for (int i = 0; i < n; i++) {
+            points.add(new double[]{
+                    fromX + random.nextDouble() * (toX - fromX),
+                    (random.nextDouble() - .5) * SLICE,
+                    z + random.nextGaussian() * NOISE
+            });
+        }
+    }
+
+    private static void addVertical(List<double[]> points, double x, double height, double density, Random random) {
+        final int n = (int) Math.round(height * SLICE * density);
+        for (int i = 0; i < n; i++) {
+            points.add(new double[]{
+                    x + random.nextGaussian() * NOISE,
+                    (random.nextDouble() - .5) * SLICE,
+                    random.nextDouble() * height
+            });
+        }
+    }
+}
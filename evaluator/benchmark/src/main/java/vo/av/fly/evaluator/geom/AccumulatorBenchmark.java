@@ -0,0 +1,81 @@
+package vo.av.fly.evaluator.geom;
+
+import org.locationtech.jts.geom.GeometryFactory;
+import org.openjdk.jmh.annotations.*;
+import vo.av.fly.evaluator.benchmark.SwathSlice;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of the points layered above the same location, see {@link Accumulator#ensureUniqueness()}.
+ * <p>
+ * The layered points are resolved once per accumulator, so {@code ensureUniqueness} is measured together with adding
+ * the points: subtract {@code add} for its own cost.
+ * @author av1966
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccumulatorBenchmark {
+    @Param({"FLAT_GROUND", "SINGLE_FACADE", "STREET_CANYON", "DENSE_DOWNTOWN"})
+    public SwathSlice.Scene scene;
+
+    @Param({"4", "16", "64"})
+    public double density;
+
+    @Param({"0.03", "0.1"})
+    public double resolution;
+
+    @Param({"TREE_SET", "SORTED_ARRAY"})
+    public Accumulator.Storage storage;
+
+    private double[] u, v;
+    private GeometryFactory geomFactory;
+
+    @Setup
+    public void setUp() {
+        final Transformer transformer = new YTransformer(0);
+        final List<double[]> points = SwathSlice.generate(scene, density, 1);
+
+        u = new double[points.size()];
+        v = new double[points.size()];
+        final double[] uv = new double[2];
+        for (int i = 0; i < u.length; i++) {
+            final double[] point = points.get(i);
+            transformer.transform(point[0], point[1], point[2], uv);
+            u[i] = uv[0];
+            v[i] = uv[1];
+        }
+        geomFactory = new GeometryFactory();
+    }
+
+    private Accumulator addAll() {
+        final Accumulator accumulator = new Accumulator(
+                -30, 30, resolution,
+                new double[]{0, SwathSlice.ALTITUDE},
+                true,
+                geomFactory,
+                storage
+        );
+        for (int i = 0; i < u.length; i++) {
+            accumulator.add(u[i], v[i]);
+        }
+        return accumulator;
+    }
+
+    @Benchmark
+    public Accumulator add() {
+        return addAll();
+    }
+
+    @Benchmark
+    public Accumulator ensureUniqueness() {
+        final Accumulator accumulator = addAll();
+        accumulator.ensureUniqueness();
+        return accumulator;
+    }
+}
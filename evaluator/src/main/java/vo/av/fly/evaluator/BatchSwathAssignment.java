@@ -0,0 +1,120 @@
+package vo.av.fly.evaluator;
+
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+import vo.av.fly.evaluator.geom.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Pair the samples of a partition with the swath segments of a batch of flight grids, keyed by the index of the flight
+ * grid in the batch and by {@link ImmutableSwathSegment#key(boolean, long, long)}.
+ * <p>
+ * The blocks of the partition are decoded again for every flight grid, whose samples are paired as by
+ * {@link SwathAssignment}. Unlike {@link SwathAssignment}, the samples are paired in the frame of their flight grid, the
+ * transformation of the flight grid being unknown to the points of a swath segment.
+ */
+public class BatchSwathAssignment
+        implements PairFlatMapFunction<Iterator<PointBlock>, Tuple2<Integer, Long>, ImmutableBasePoint> {
+    private static final long serialVersionUID = 5167304992386121475L;
+
+    private final RigidTransform2D[] transformations;
+    private final double lineSpacing;
+    private final double sampleSpacing;
+    private final double halfSwathWidth;
+    private final FieldOfView fieldOfView;
+    private final Broadcast<HeightFloor> heightFloor;
+    private final Boolean[] flyingDirections;
+
+    /**
+     * Constructor.
+     *
+     * @param transformations transformation of the samples into the frame of every flight grid
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param halfSwathWidth
+     * @param fieldOfView field of view across the flight lines, or null to keep all the flight lines within the swath
+     * @param heightFloor lowest height around the samples, before the transformations; may be null without field of view
+     * @param flyingDirections only flying direction to pair the samples in for every flight grid, or null for both
+     */
+    public BatchSwathAssignment(
+            RigidTransform2D[] transformations,
+            double lineSpacing,
+            double sampleSpacing,
+            double halfSwathWidth,
+            FieldOfView fieldOfView,
+            Broadcast<HeightFloor> heightFloor,
+            Boolean[] flyingDirections
+    ) {
+        this.transformations = transformations;
+        this.lineSpacing = lineSpacing;
+        this.sampleSpacing = sampleSpacing;
+        this.halfSwathWidth = halfSwathWidth;
+        this.fieldOfView = fieldOfView;
+        this.heightFloor = heightFloor;
+        this.flyingDirections = flyingDirections;
+    }
+
+    @Override
+    public Iterator<Tuple2<Tuple2<Integer, Long>, ImmutableBasePoint>> call(Iterator<PointBlock> blocks) {
+        final List<PointBlock> partition = new ArrayList();
+        while (blocks.hasNext()) {
+            partition.add(blocks.next());
+        }
+        return new Pairs(partition);
+    }
+
+    /**
+     * Pairs of the samples of a partition, one flight grid after the other.
+     */
+    private final class Pairs implements Iterator<Tuple2<Tuple2<Integer, Long>, ImmutableBasePoint>> {
+        private final List<PointBlock> partition;
+
+        private int grid = -1;
+        private Iterator<Tuple2<Long, ImmutableBasePoint>> pairs = Collections.emptyIterator();
+
+        Pairs(List<PointBlock> partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!pairs.hasNext() && grid + 1 < transformations.length) {
+                grid++;
+                pairs = new SwathAssignment(
+                        transformations[grid], lineSpacing, sampleSpacing, halfSwathWidth, fieldOfView, heightFloor,
+                        flyingDirections[grid]
+                ).call(PointBlock.points(partition.iterator()));
+            }
+            return pairs.hasNext();
+        }
+
+        @Override
+        public Tuple2<Tuple2<Integer, Long>, ImmutableBasePoint> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Tuple2<Long, ImmutableBasePoint> pair = pairs.next();
+            final ImmutableBasePoint sample = pair._2();
+            final RigidTransform2D transformation = transformations[grid];
+            return new Tuple2<Tuple2<Integer, Long>, ImmutableBasePoint>(
+                    new Tuple2<Integer, Long>(grid, pair._1()),
+                    ImmutableBasePoint.valueOf(
+                            transformation.x(sample.x(), sample.y()),
+                            transformation.y(sample.x(), sample.y()),
+                            sample.z()
+                    )
+            );
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
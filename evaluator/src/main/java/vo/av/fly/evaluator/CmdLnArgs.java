@@ -37,11 +37,38 @@ public class CmdLnArgs {
         o.setRequired(false);
         options.addOption(o);
 
+        o = new Option("tile", true, "tile size, to evaluate from tiles of the point cloud without shuffle (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("orientation_cache", true, "memory budget in MB of the rotated tiles cached per executor, none by default (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("segment_memo", true, "local directory of the swath segments memoised by every executor (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("segment_memo_size", true, "size in MB of the swath segment memo of every executor (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
         o = new Option("offset", true, "point cloud offset parameters");
         o.setArgs(3);
         o.setRequired(false);
         options.addOption(o);
 
+        o = new Option("classes", true, "LAS classifications of the points to keep (optional)");
+        o.setArgs(Option.UNLIMITED_VALUES);
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("bbox", true, "horizontal bounding box of the points to read (optional)");
+        o.setArgName("minX, minY, maxX, maxY");
+        o.setArgs(4);
+        o.setRequired(false);
+        options.addOption(o);
+
         o = new Option("ls", "line_spacing", true, "flight line spacing");
         o.setRequired(true);
         options.addOption(o);
@@ -74,6 +101,10 @@ public class CmdLnArgs {
         o.setRequired(false);
         options.addOption(o);
 
+        o = new Option("batch", true, "max. number of flight grids evaluated together by the remote evaluator (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
         o = new Option("population_size", true, "population size");
         o.setRequired(true);
         options.addOption(o);
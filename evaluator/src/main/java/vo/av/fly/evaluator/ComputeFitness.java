@@ -7,19 +7,20 @@ import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.Function;
-import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.api.java.function.PairFunction;
 import org.apache.spark.broadcast.Broadcast;
-import org.locationtech.jts.geom.LineSegment;
+import org.apache.spark.storage.StorageLevel;
 import scala.Tuple2;
 import vo.av.fly.evaluator.geom.*;
 
-import javax.vecmath.Vector3d;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -29,6 +30,11 @@ public class ComputeFitness {
 
     static Logger LOG = Logger.getLogger(ComputeFitness.class);
 
+    /**
+     * Max number of cells of the height floor, see {@link #heightFloor(JavaRDD, FieldOfView, double)}.
+     */
+    public static final int MAX_HEIGHT_FLOOR_CELLS = 1 << 20;
+
     public static void main(String[] args) throws IOException {
 
         final CommandLine cmd = parseArgs(args);
@@ -74,112 +80,62 @@ public class ComputeFitness {
         /////////////
         // Parse point cloud from text file
         /////////////
-        JavaRDD<ImmutableBasePoint> samples = sc.textFile(inputFN, partitions).flatMap(
-                Functions.parsePoints(offset)
+        JavaRDD<ImmutableBasePoint> samples = Functions.readPoints(
+                sc, inputFN, partitions, offset,
+                Functions.parseClasses(cmd.getOptionValues("classes")),
+                Functions.parseBoundingBox(cmd.getOptionValues("bbox"))
         );
-
+        // read once by the height floor, then by the swath assignment
+        samples.persist(StorageLevel.MEMORY_AND_DISK_SER());
 
 
         /////////////
         // Apply transformations, map each sample to its base points, and then group the samples by their base points
         /////////////
-        List<SerializableTransform3D> transformations = new LinkedList();
-        SerializableTransform3D rotate = new SerializableTransform3D();
-        rotate.rotZ(orientation * Math.PI / 180);
-        transformations.add(rotate);
-
-        SerializableTransform3D shift = new SerializableTransform3D();
-        shift.setTranslation(new Vector3d(shiftX, shiftY, 0));
-        transformations.add(shift);
-
-        final Broadcast<List<SerializableTransform3D>> transformationsBroadcast = sc.broadcast(transformations);
-
-        JavaPairRDD<ImmutableSwathSegment, Iterable<ImmutableBasePoint>> swathSegments = samples
-                .flatMapToPair(
-                        new PairFlatMapFunction<ImmutableBasePoint, ImmutableSwathSegment, ImmutableBasePoint>() {
-                            private static final long serialVersionUID = -2679615219585090286L;
-
-                            @Override
-                            public Iterator<Tuple2<ImmutableSwathSegment, ImmutableBasePoint>> call(ImmutableBasePoint sample) throws Exception {
-                                ImmutableBasePoint transformedSample = sample.transform(
-                                        transformationsBroadcast.getValue()
-                                );
-
-                                List<Tuple2<ImmutableSwathSegment, ImmutableBasePoint>> result = new LinkedList();
-
-                                result.addAll(
-                                        pair(
-                                                true,
-                                                transformedSample,
-                                                lineSpacing,
-                                                sampleSpacing,
-                                                halfSwathWidth,
-                                                altitude
-                                        )
-                                );
-                                result.addAll(
-                                        pair(
-                                                false,
-                                                transformedSample,
-                                                lineSpacing,
-                                                sampleSpacing,
-                                                halfSwathWidth,
-                                                altitude
-                                        )
-                                );
-
-                                return result.iterator();// result.iterator();
-                            }
-
-                        })
+        final RigidTransform2D transformation = RigidTransform2D.valueOf(orientation, shiftX, shiftY);
+
+        final FieldOfView fieldOfView = new FieldOfView(altitude, minAngle, maxAngle, aglResolution);
+        final Broadcast<HeightFloor> heightFloorBroadcast = sc.broadcast(heightFloor(samples, fieldOfView, sampleSpacing));
+
+        JavaPairRDD<Long, Iterable<ImmutableBasePoint>> swathSegments = samples
+                .mapPartitionsToPair(new SwathAssignment(
+                        transformation,
+                        lineSpacing,
+                        sampleSpacing,
+                        halfSwathWidth,
+                        fieldOfView,
+                        heightFloorBroadcast
+                ))
                 .groupByKey();
 
         //LOGGER.info("\n\n\n\n\n\n"+swathSegments.count());
         ////////////
         // Interpolate missing pulses
         ////////////
-        JavaRDD<Integer> numberOfInterpolatedPulses = swathSegments.map(
-                new Function<Tuple2<ImmutableSwathSegment, Iterable<ImmutableBasePoint>>, Integer>() {
+        JavaRDD<Integer> numberOfInterpolatedPulses = swathSegments.mapPartitions(
+                new FlatMapFunction<Iterator<Tuple2<Long, Iterable<ImmutableBasePoint>>>, Integer>() {
                     private static final long serialVersionUID = -7233659639760373602L;
 
                     @Override
-                    public Integer call(Tuple2<ImmutableSwathSegment, Iterable<ImmutableBasePoint>> slice) throws Exception {
-                        ImmutableSwathSegment centre = slice._1();
-
-                        Transformer transformer = centre.flyingDirection() ? new YTransformer(centre.y()) : new XTransformer(centre.x());
-
-                        double[] aircraftPos = new double[]{
-                                centre.x(),
-                                centre.y(),
-                                centre.z()
-                        };
-
-                        LOG.debug(String.format("\nAircraft position %s", centre.toString()));
-
-                        RayCasting visibilityComputation = new RayCasting(
-                                aircraftPos,
-                                aglResolution,
-                                minAngle, maxAngle,
-                                uniqueVPerU,
-                                transformer
+                    public Iterator<Integer> call(Iterator<Tuple2<Long, Iterable<ImmutableBasePoint>>> slices) throws Exception {
+                        // reused by all the swath segments of the partition
+                        final PulseCounter pulseCounter = new PulseCounter(
+                                lineSpacing, sampleSpacing, altitude, aglResolution, minAngle, maxAngle, uniqueVPerU
                         );
-
-                        //final Sample[] sampleArray = slice._2();
-                        for (ImmutableBasePoint sample : slice._2()) {
-                            //LOGGER.debug(String.format("%s", sample.toString()));
-                            visibilityComputation.addXYZ(
-                                    new double[]{
-                                            sample.x(),
-                                            sample.y(),
-                                            sample.z()
-                                    }
-                            );
+                        final SwathSegmentPoints points = new SwathSegmentPoints();
+                        int numberOfPulses = 0;
+
+                        while (slices.hasNext()) {
+                            Tuple2<Long, Iterable<ImmutableBasePoint>> slice = slices.next();
+                            points.clear();
+                            for (ImmutableBasePoint sample : slice._2()) {
+                                points.add(sample, transformation);
+                            }
+                            numberOfPulses += pulseCounter.count(slice._1(), points);
                         }
 
-                        List<LineSegment> interpolatedPulses = visibilityComputation.generateInterpolatedPulses();
-                        return interpolatedPulses.size();
+                        return Collections.singletonList(numberOfPulses).iterator();
                     }
-
                 }
         );
 
@@ -205,81 +161,138 @@ public class ComputeFitness {
     }
 
     /**
+     * Lowest height around every sample, for {@link FieldOfView#mayReach(double, double)}. The samples are in the frame
+     * of the point cloud, before the flight grid transformations, so the floor is computed once for all the flight
+     * grids.
+     * <p>
+     * The cells are large enough for the floor to hold within the largest margin of the field of view (that of the
+     * lowest sample) plus the sample spacing, and larger over large point clouds, to keep at most
+     * {@link #MAX_HEIGHT_FLOOR_CELLS} cells on the driver and in the broadcast. Larger cells only lower the floor, so
+     * fewer points are culled.
      *
-     * @param flyingDirection
-     * @param sample
-     * @param lineSpacing
+     * @param samples
+     * @param fieldOfView
      * @param sampleSpacing
-     * @param halfSwathWidth
-     * @param altitude
      * @return
      */
-    public static List<Tuple2<ImmutableSwathSegment, ImmutableBasePoint>> pair(
-            final boolean flyingDirection,
-            final ImmutableBasePoint sample,
-            final double lineSpacing,
-            final double sampleSpacing,
-            final double halfSwathWidth,
-            final double altitude
+    public static HeightFloor heightFloor(
+            final JavaRDD<ImmutableBasePoint> samples,
+            final FieldOfView fieldOfView,
+            final double sampleSpacing
     ) {
-        final double anchor = flyingDirection ? sample.x() : sample.y();
-        final double coordinate = flyingDirection ? sample.y() : sample.x();
-
-        final double closestLine = Math.round(anchor / lineSpacing) * lineSpacing;
-        final double closestSample = Math.round(coordinate / sampleSpacing) * sampleSpacing;
-
-        List< Tuple2<ImmutableSwathSegment, ImmutableBasePoint>> result = new LinkedList();
-
-        //final SampleArray sampleArray = new SampleArray(new Sample[]{sample});
-        // moving left
-        int i = 0;
-        while (true) {
-            double lineAnchor = closestLine - (lineSpacing * (i++));
-            if (anchor - lineAnchor <= halfSwathWidth) {
-
-                ImmutableSwathSegment basePoint = ImmutableSwathSegment.valueOf(
-                        flyingDirection,
-                        flyingDirection ? lineAnchor : closestSample,
-                        flyingDirection ? closestSample : lineAnchor,
-                        altitude
-                );
-
-                Tuple2<ImmutableSwathSegment, ImmutableBasePoint> tuple = new Tuple2(basePoint, sample);
-                result.add(tuple);
-            } else {
-                break;
+        // min x, min y, min z, max x, max y
+        final double[] bounds = samples.aggregate(
+                new double[]{
+                        Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+                },
+                new Function2<double[], ImmutableBasePoint, double[]>() {
+                    private static final long serialVersionUID = 2283512467310475046L;
+
+                    @Override
+                    public double[] call(double[] bounds, ImmutableBasePoint sample) {
+                        bounds[0] = Math.min(bounds[0], sample.x());
+                        bounds[1] = Math.min(bounds[1], sample.y());
+                        bounds[2] = Math.min(bounds[2], sample.z());
+                        bounds[3] = Math.max(bounds[3], sample.x());
+                        bounds[4] = Math.max(bounds[4], sample.y());
+                        return bounds;
+                    }
+                },
+                new Function2<double[], double[], double[]>() {
+                    private static final long serialVersionUID = -1203979318046473615L;
+
+                    @Override
+                    public double[] call(double[] bounds1, double[] bounds2) {
+                        for (int i = 0; i < 3; i++) {
+                            bounds1[i] = Math.min(bounds1[i], bounds2[i]);
+                        }
+                        for (int i = 3; i < 5; i++) {
+                            bounds1[i] = Math.max(bounds1[i], bounds2[i]);
+                        }
+                        return bounds1;
+                    }
+                }
+        );
+
+        double size = sampleSpacing + fieldOfView.margin(bounds[2]);
+        if (bounds[0] <= bounds[3]) {
+            size = Math.max(size, Math.sqrt((bounds[3] - bounds[0]) * (bounds[4] - bounds[1]) / MAX_HEIGHT_FLOOR_CELLS));
+            while (cells(bounds[0], bounds[3], size) * cells(bounds[1], bounds[4], size) > MAX_HEIGHT_FLOOR_CELLS) {
+                size *= 1.1;
             }
         }
+        final double cellSize = size;
 
-        // moving right
-        i = 1;
-        while (true) {
-            double lineAnchor = closestLine + (lineSpacing * (i++));
-            if (lineAnchor - anchor <= halfSwathWidth) {
-                final ImmutableSwathSegment basePoint = ImmutableSwathSegment.valueOf(
-                        flyingDirection,
-                        flyingDirection ? lineAnchor : closestSample,
-                        flyingDirection ? closestSample : lineAnchor,
-                        altitude
-                );
-
-                Tuple2<ImmutableSwathSegment, ImmutableBasePoint> tuple = new Tuple2(basePoint, sample);
-                result.add(tuple);
-            } else {
-                break;
-            }
+        // lowest height per cell, sorted by cell and collected as arrays, partition by partition
+        final List<Tuple2<long[], double[]>> lowestZPerCell = samples
+                .mapToPair(new PairFunction<ImmutableBasePoint, Long, Double>() {
+                    private static final long serialVersionUID = -5409387746207530311L;
+
+                    @Override
+                    public Tuple2<Long, Double> call(ImmutableBasePoint sample) {
+                        return new Tuple2(HeightFloor.cell(sample.x(), sample.y(), cellSize), sample.z());
+                    }
+                })
+                .reduceByKey(MIN)
+                .sortByKey()
+                .mapPartitions(new FlatMapFunction<Iterator<Tuple2<Long, Double>>, Tuple2<long[], double[]>>() {
+                    private static final long serialVersionUID = 8735119447026165243L;
+
+                    @Override
+                    public Iterator<Tuple2<long[], double[]>> call(Iterator<Tuple2<Long, Double>> cells) {
+                        final List<Tuple2<Long, Double>> partition = new ArrayList();
+                        while (cells.hasNext()) {
+                            partition.add(cells.next());
+                        }
+                        final long[] keys = new long[partition.size()];
+                        final double[] lowestZ = new double[partition.size()];
+                        for (int i = 0; i < keys.length; i++) {
+                            keys[i] = partition.get(i)._1();
+                            lowestZ[i] = partition.get(i)._2();
+                        }
+                        return Collections.singletonList(new Tuple2<long[], double[]>(keys, lowestZ)).iterator();
+                    }
+                })
+                .collect();
+
+        int n = 0;
+        for (Tuple2<long[], double[]> partition : lowestZPerCell) {
+            n += partition._1().length;
+        }
+        final long[] cells = new long[n];
+        final double[] lowestZ = new double[n];
+        n = 0;
+        for (Tuple2<long[], double[]> partition : lowestZPerCell) {
+            System.arraycopy(partition._1(), 0, cells, n, partition._1().length);
+            System.arraycopy(partition._2(), 0, lowestZ, n, partition._2().length);
+            n += partition._1().length;
         }
+        LOG.info(String.format("Height floor of %d cells of %.2f", n, cellSize));
 
-        return result;
+        return HeightFloor.of(cellSize, cells, lowestZ);
     }
 
+    private static long cells(double min, double max, double cellSize) {
+        return (long) Math.floor(max / cellSize) - (long) Math.floor(min / cellSize) + 1;
+    }
+
+    private static final Function2<Double, Double, Double> MIN = new Function2<Double, Double, Double>() {
+        private static final long serialVersionUID = 6893546178870452195L;
+
+        @Override
+        public Double call(Double z1, Double z2) {
+            return Math.min(z1, z2);
+        }
+    };
+
     public static CommandLine parseArgs(String[] args) {
         Options options = new Options();
 
         Option o;
 
         // input path
-        o = new Option("i", "input", true, "input directory");
+        o = new Option("i", "input", true, "input directory, or LAS file");
         options.addOption(o);
 
         o = new Option("p", "partitions", true, "min number of partitions");
@@ -291,6 +304,17 @@ public class ComputeFitness {
         o.setRequired(false);
         options.addOption(o);
 
+        o = new Option("classes", true, "LAS classifications of the points to keep (optional)");
+        o.setArgs(Option.UNLIMITED_VALUES);
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("bbox", true, "horizontal bounding box of the points to read (optional)");
+        o.setArgName("minX, minY, maxX, maxY");
+        o.setArgs(4);
+        o.setRequired(false);
+        options.addOption(o);
+
         o = new Option("ls", "line_spacing", true, "flight line spacing");
         options.addOption(o);
 
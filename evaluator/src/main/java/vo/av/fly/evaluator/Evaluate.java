@@ -6,15 +6,12 @@ import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function2;
-import org.apache.spark.api.java.function.PairFlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
-import org.locationtech.jts.geom.LineSegment;
 import scala.Tuple2;
 import vo.av.fly.evaluator.geom.*;
 
-import javax.vecmath.Vector3d;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -22,9 +19,13 @@ import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class Evaluate {
 
@@ -43,11 +44,12 @@ public class Evaluate {
                 .registerKryoClasses(new Class[]{
                         ImmutableSwathSegment.class,
                         ImmutableBasePoint.class,
+                        Long.class,
                         SerializableLineSegment.class,
-                        SerializableTransform3D.class,
                         LinkedList.class,
                         Integer.class
                 })
+                .set("spark.kryo.registrator", EvaluatorKryoRegistrator.class.getName())
                 .set("spark.kryo.registrationRequire", "true");
 
         JavaSparkContext sc = new JavaSparkContext(conf);
@@ -94,6 +96,12 @@ public class Evaluate {
             String _inputPointCloud = null;
             String[] _aglStr = null;
             String[] _offsetStr = null;
+            String[] _classesStr = null;
+            String[] _bboxStr = null;
+            String _tileSize = null;
+            String _orientationCache = null;
+            String _segmentMemo = null;
+            String _segmentMemoSize = null;
             boolean _uniqueVPerU = true;
 
             int _partitions = 8;
@@ -106,6 +114,8 @@ public class Evaluate {
                 final CommandLine clientCmd = CmdLnArgs.parseArgs(clientArgs);
 
                 _offsetStr = clientCmd.hasOption("offset") ? clientCmd.getOptionValues("offset") : null;
+                _classesStr = clientCmd.getOptionValues("classes");
+                _bboxStr = clientCmd.getOptionValues("bbox");
                 _altitude = clientCmd.getOptionValue("alt");
                 _lineSpacing = clientCmd.getOptionValue("ls");
                 _sampleSpacing = clientCmd.getOptionValue("ss");
@@ -114,6 +124,10 @@ public class Evaluate {
                 _uniqueVPerU = clientCmd.hasOption("u");
 
                 _partitions = clientCmd.hasOption("p") ? Integer.parseInt(clientCmd.getOptionValue("p")) : 8;
+                _tileSize = clientCmd.getOptionValue("tile");
+                _orientationCache = clientCmd.getOptionValue("orientation_cache");
+                _segmentMemo = clientCmd.getOptionValue("segment_memo");
+                _segmentMemoSize = clientCmd.getOptionValue("segment_memo_size");
 
                 // signal the client
                 returningMsg = CmdLnArgs.SETUP_COMPLETED;
@@ -154,12 +168,52 @@ public class Evaluate {
             //
             // Parse point cloud from text file
             //
-            JavaRDD<ImmutableBasePoint> samples = sc.textFile(inputPointCloud, partitions).flatMap(
-                    Functions.parsePoints(offset)
+            JavaRDD<PointBlock> blocks = Functions.readPoints(
+                    sc, inputPointCloud, partitions, offset,
+                    Functions.parseClasses(_classesStr), Functions.parseBoundingBox(_bboxStr)
+            ).mapPartitions(Functions.toBlocks(PointBlock.MILLIMETRE));
+
+            // cache the samples as compact blocks, decoded on the fly by every query
+            blocks.cache();
+            final JavaRDD<ImmutableBasePoint> samples = blocks.mapPartitions(Functions.fromBlocks());
+
+            final FieldOfView fieldOfView = new FieldOfView(altitude, minAngle, maxAngle, aglResolution);
+            final Broadcast<HeightFloor> bcHeightFloor = sc.broadcast(
+                    ComputeFitness.heightFloor(samples, fieldOfView, sampleSpacing)
             );
 
-            //TODO: how does this influence computation time?
-            samples.cache(); // cache samples for later use
+            // with tiles, the samples are cached by tile instead, and the queries run without shuffle
+            final Tiling tiling = _tileSize == null ? null : new Tiling(
+                    Double.parseDouble(_tileSize), TileEvaluation.halo(halfSwathWidth, sampleSpacing)
+            );
+            final long orientationCacheBudget = _orientationCache == null
+                    ? 0 : (long) (Double.parseDouble(_orientationCache) * 1024 * 1024);
+            JavaPairRDD<Long, List<PointBlock>> tiles = null;
+            if (tiling != null) {
+                tiles = TileEvaluation.tile(samples, tiling, partitions);
+                tiles.cache();
+                LOGGER.info(String.format("Split the point cloud into %d tiles", tiles.count()));
+                blocks.unpersist();
+            }
+
+            // pulses of the swath segments memoised on the local disk of every executor, across the runs
+            SegmentMemo segmentMemo = null;
+            if (_segmentMemo != null) {
+                final long fingerprint = SegmentMemo.fingerprint(
+                        sc.hadoopConfiguration(), inputPointCloud,
+                        Arrays.toString(offset), Arrays.toString(_classesStr), Arrays.toString(_bboxStr),
+                        Arrays.toString(new double[]{sampleSpacing, altitude, minAngle, maxAngle, aglResolution}),
+                        String.valueOf(uniqueVPerU)
+                );
+                final long segmentMemoSize = (long) (Double.parseDouble(
+                        _segmentMemoSize == null ? "256" : _segmentMemoSize
+                ) * 1024 * 1024);
+                segmentMemo = new SegmentMemo(_segmentMemo, segmentMemoSize, fingerprint, lineSpacing, sampleSpacing);
+            }
+            final SegmentMemo memo = segmentMemo;
+
+            // pulses of every family of flight lines evaluated so far, shared by the flight grids with the same lines
+            final LineFamilyCache lineFamilyCache = new LineFamilyCache(sampleSpacing);
 
             while ((msgFromEvolve = reader.readLine()) != null) { // detect an inbound message
                 LOGGER.info(String.format("Receive  [%s]", msgFromEvolve));
@@ -172,137 +226,167 @@ public class Evaluate {
 
                 String[] tokens = msgFromEvolve.split(CmdLnArgs.DELIM);
 
-                if (tokens.length != 3) {
+                // a single flight grid, or a batch of flight grids evaluated together
+                if (tokens.length == 0 || tokens.length % 3 != 0) {
                     LOGGER.warn(String.format("Cannot process received message '%s'", msgFromEvolve));
                     continue;
                 }
+                final int numberOfGrids = tokens.length / 3;
 
-                final double orientation = Double.parseDouble(tokens[0]);
-                final double shiftX = Double.parseDouble(tokens[1]);
-                final double shiftY = Double.parseDouble(tokens[2]);
+                final double[] orientations = new double[numberOfGrids];
+                final double[] shiftsX = new double[numberOfGrids];
+                final double[] shiftsY = new double[numberOfGrids];
+                final int[] pulsesX = new int[numberOfGrids];
+                final int[] pulsesY = new int[numberOfGrids];
+                final int[] sameAs = new int[numberOfGrids]; // first identical flight grid of the batch
+                final Map<List<Double>, Integer> firstGrids = new HashMap();
 
                 /////////////
                 // Apply transformations, map each sample to its base points, and then group the samples by their base points
                 /////////////
-                List<SerializableTransform3D> transformers = new LinkedList();
-                SerializableTransform3D rotate = new SerializableTransform3D();
-                rotate.rotZ(orientation * Math.PI / 180);
-                transformers.add(rotate);
-
-                SerializableTransform3D shift = new SerializableTransform3D();
-                shift.setTranslation(new Vector3d(shiftX, shiftY, 0));
-                transformers.add(shift);
-
-                final Broadcast<List<SerializableTransform3D>> bcTransformers = sc.broadcast(transformers);
-
-                JavaPairRDD<ImmutableSwathSegment, ImmutableBasePoint> pwPairs = samples
-                        .flatMapToPair(
-                                new PairFlatMapFunction<ImmutableBasePoint, ImmutableSwathSegment, ImmutableBasePoint>() {
-                                    private static final long serialVersionUID = -2679615219585090286L;
-
-                                    @Override
-                                    public Iterator<Tuple2<ImmutableSwathSegment, ImmutableBasePoint>> call(ImmutableBasePoint sample) throws Exception {
-
-                                        ImmutableBasePoint transformedSample = sample.transform(bcTransformers.getValue());
-
-                                        List<Tuple2<ImmutableSwathSegment, ImmutableBasePoint>> result = new LinkedList();
-
-                                        result.addAll(ComputeFitness.pair(true, transformedSample, lineSpacing, sampleSpacing, halfSwathWidth, altitude));
-                                        result.addAll(ComputeFitness.pair(false, transformedSample, lineSpacing, sampleSpacing, halfSwathWidth, altitude));
-
-                                        return result.iterator();// result.iterator();
-                                    }
-
-                                });
-
-                // replace groupByKey by aggregateByKey
-                JavaPairRDD<ImmutableSwathSegment, List<ImmutableBasePoint>> swathSegments = pwPairs.aggregateByKey(
-                        new ArrayList<ImmutableBasePoint>(),
-                        new Function2<List<ImmutableBasePoint>,ImmutableBasePoint, List<ImmutableBasePoint>>(){
-                            @Override
-                            public List<ImmutableBasePoint> call(List<ImmutableBasePoint>
-                                                                         list,
-                                                                 ImmutableBasePoint
-                                                                         point) {
-                                list.add(point);
-                                return list;
-                            }
-                        },
-                        new Function2<List<ImmutableBasePoint>,List<ImmutableBasePoint>, List<ImmutableBasePoint>>(){
-                            @Override
-                            public List<ImmutableBasePoint> call(List<ImmutableBasePoint>
-                                                                         l1,
-                                                                 List<ImmutableBasePoint>
-                                                                         l2) {
-                                l1.addAll(l2);
-                                return l1;
+                // only evaluate the flying directions whose lines were not evaluated yet
+                final List<Integer> evaluated = new ArrayList();
+                final List<RigidTransform2D> transformations = new ArrayList();
+                final List<Boolean> flyingDirections = new ArrayList();
+                for (int i = 0; i < numberOfGrids; i++) {
+                    orientations[i] = Double.parseDouble(tokens[3 * i]);
+                    shiftsX[i] = Double.parseDouble(tokens[3 * i + 1]);
+                    shiftsY[i] = Double.parseDouble(tokens[3 * i + 2]);
+
+                    final List<Double> grid = Arrays.asList(orientations[i], shiftsX[i], shiftsY[i]);
+                    sameAs[i] = firstGrids.containsKey(grid) ? firstGrids.get(grid) : i;
+                    if (sameAs[i] != i) {
+                        continue;
+                    }
+                    firstGrids.put(grid, i);
+
+                    final Integer cachedPulsesX = lineFamilyCache.get(true, orientations[i], shiftsX[i], shiftsY[i]);
+                    final Integer cachedPulsesY = lineFamilyCache.get(false, orientations[i], shiftsX[i], shiftsY[i]);
+                    pulsesX[i] = cachedPulsesX == null ? 0 : cachedPulsesX;
+                    pulsesY[i] = cachedPulsesY == null ? 0 : cachedPulsesY;
+
+                    if (cachedPulsesX == null || cachedPulsesY == null) {
+                        evaluated.add(i);
+                        transformations.add(RigidTransform2D.valueOf(orientations[i], shiftsX[i], shiftsY[i]));
+                        flyingDirections.add(cachedPulsesX == null
+                                ? (cachedPulsesY == null ? null : Boolean.TRUE) : Boolean.FALSE);
+                    }
+                }
+                LOGGER.info(String.format(
+                        "Evaluate %d of %d flight grid(s)", evaluated.size(), numberOfGrids
+                ));
+
+                final RigidTransform2D[] batch = transformations.toArray(new RigidTransform2D[0]);
+                final Boolean[] batchFlyingDirections = flyingDirections.toArray(new Boolean[0]);
+
+                JavaRDD<int[]> numberOfInterpolatedPulses = null;
+                if (batch.length == 0) {
+                    // all cached
+                } else if (tiling != null) {
+                    // swath segments evaluated by the tile of their centre, from the points cached with the tile
+                    numberOfInterpolatedPulses = tiles.mapPartitions(new TileEvaluation(
+                            tiles.id(), tiling, batch, lineSpacing, sampleSpacing, altitude, halfSwathWidth,
+                            fieldOfView, bcHeightFloor, aglResolution, minAngle, maxAngle, uniqueVPerU,
+                            batchFlyingDirections, orientationCacheBudget, memo
+                    ));
+                } else {
+                    // the samples of every flight grid of the batch, in its frame, in a single shuffle
+                    JavaPairRDD<Tuple2<Integer, Long>, ImmutableBasePoint> pwPairs = blocks.mapPartitionsToPair(
+                            new BatchSwathAssignment(
+                                    batch, lineSpacing, sampleSpacing, halfSwathWidth, fieldOfView, bcHeightFloor,
+                                    batchFlyingDirections
+                            )
+                    );
+
+                    // replace groupByKey by aggregateByKey
+                    JavaPairRDD<Tuple2<Integer, Long>, SwathSegmentPoints> swathSegments = pwPairs.aggregateByKey(
+                            new SwathSegmentPoints(),
+                            new Function2<SwathSegmentPoints, ImmutableBasePoint, SwathSegmentPoints>(){
+                                @Override
+                                public SwathSegmentPoints call(SwathSegmentPoints points, ImmutableBasePoint point) {
+                                    points.add(point);
+                                    return points;
+                                }
+                            },
+                            new Function2<SwathSegmentPoints, SwathSegmentPoints, SwathSegmentPoints>(){
+                                @Override
+                                public SwathSegmentPoints call(SwathSegmentPoints p1, SwathSegmentPoints p2) {
+                                    p1.addAll(p2);
+                                    return p1;
+                                }
                             }
-                        }
-                );
+                    );
+
+                    //LOGGER.info("\n\n\n\n\n\n"+pointSlices.count());
+                    ////////////
+                    // Interpolate missing pulses
+                    ////////////
+                    numberOfInterpolatedPulses = swathSegments.mapPartitions(
+                            new FlatMapFunction<Iterator<Tuple2<Tuple2<Integer, Long>, SwathSegmentPoints>>, int[]>() {
+                                private static final long serialVersionUID = -7233659639760373602L;
+
+                                @Override
+                                public Iterator<int[]> call(Iterator<Tuple2<Tuple2<Integer, Long>, SwathSegmentPoints>> slices) throws Exception {
+                                    // reused by all the swath segments of a flight grid in the partition
+                                    final PulseCounter[] pulseCounters = new PulseCounter[batch.length];
+                                    // of every flight grid, in the flying directions true and false
+                                    final int[] numberOfPulses = new int[2 * batch.length];
+
+                                    while (slices.hasNext()) {
+                                        Tuple2<Tuple2<Integer, Long>, SwathSegmentPoints> slice = slices.next();
+                                        final int grid = slice._1()._1();
+                                        final long key = slice._1()._2();
+                                        if (pulseCounters[grid] == null) {
+                                            pulseCounters[grid] = new PulseCounter(
+                                                    lineSpacing, sampleSpacing, altitude, aglResolution, minAngle, maxAngle, uniqueVPerU,
+                                                    memo, batch[grid]
+                                            );
+                                        }
+                                        final int memoised = pulseCounters[grid].memoised(key);
+                                        numberOfPulses[2 * grid + (ImmutableSwathSegment.flyingDirection(key) ? 0 : 1)]
+                                                += memoised >= 0 ? memoised : pulseCounters[grid].count(key, slice._2());
+                                    }
 
-                //LOGGER.info("\n\n\n\n\n\n"+pointSlices.count());
-                ////////////
-                // Interpolate missing pulses
-                ////////////
-                JavaRDD<Integer> numberOfInterpolatedPulses = swathSegments.map(
-                        new Function<Tuple2<ImmutableSwathSegment, List<ImmutableBasePoint>>, Integer>() {
-                            private static final long serialVersionUID = -7233659639760373602L;
-
-                            @Override
-                            public Integer call(Tuple2<ImmutableSwathSegment, List<ImmutableBasePoint>> slice) throws Exception {
-                                ImmutableSwathSegment centre = slice._1();
-
-                                Transformer transformer = centre.flyingDirection() ? new YTransformer(centre.y()) : new XTransformer(centre.x());
-
-                                double[] aircraftPos = new double[]{
-                                        centre.x(),
-                                        centre.y(),
-                                        centre.z()
-                                };
-
-                                RayCasting visibilityComputation = new RayCasting(
-                                        aircraftPos,
-                                        aglResolution,
-                                        minAngle, maxAngle,
-                                        uniqueVPerU,
-                                        transformer
-                                );
-
-                                //final Sample[] sampleArray = slice._2();
-                                for (ImmutableBasePoint sample : slice._2()) {
-                                    //LOGGER.debug(String.format("%s", sample.toString()));
-                                    visibilityComputation.addXYZ(
-                                            new double[]{
-                                                    sample.x(),
-                                                    sample.y(),
-                                                    sample.z()
-                                            }
-                                    );
+                                    return Collections.singletonList(numberOfPulses).iterator();
                                 }
-                                List<LineSegment> interpolatedPulses = visibilityComputation.generateInterpolatedPulses();
-                                return interpolatedPulses.size();
                             }
-                        }
-                );
+                    );
+                }
 
                 ////////////
-                // Aggregate the results and compute the fitness value
+                // Aggregate the results and compute the fitness values
                 ////////////
-                List<Integer> result = numberOfInterpolatedPulses.collect();
-
-                int fitness = 0;
-                for (int r : result) {
-                    fitness += r;
+                if (numberOfInterpolatedPulses != null) {
+                    List<int[]> result = numberOfInterpolatedPulses.collect();
+                    for (int[] r : result) {
+                        for (int grid = 0; grid < batch.length; grid++) {
+                            pulsesX[evaluated.get(grid)] += r[2 * grid];
+                            pulsesY[evaluated.get(grid)] += r[2 * grid + 1];
+                        }
+                    }
+                    for (int i : evaluated) {
+                        lineFamilyCache.put(true, orientations[i], shiftsX[i], shiftsY[i], pulsesX[i]);
+                        lineFamilyCache.put(false, orientations[i], shiftsX[i], shiftsY[i], pulsesY[i]);
+                    }
                 }
 
-                returningMsg = String.format(
-                        msgFromEvolve
-                                + CmdLnArgs.DELIM
-                                + "%d",
-                        fitness
-                );
+                // one line per flight grid: the fitness, followed by its share in the flying directions true and false
+                for (int i = 0; i < numberOfGrids; i++) {
+                    pulsesX[i] = pulsesX[sameAs[i]];
+                    pulsesY[i] = pulsesY[sameAs[i]];
+                    returningMsg = String.format(
+                            tokens[3 * i] + CmdLnArgs.DELIM + tokens[3 * i + 1] + CmdLnArgs.DELIM + tokens[3 * i + 2]
+                                    + CmdLnArgs.DELIM
+                                    + "%d"
+                                    + CmdLnArgs.DELIM
+                                    + "%d"
+                                    + CmdLnArgs.DELIM
+                                    + "%d",
+                            pulsesX[i] + pulsesY[i], pulsesX[i], pulsesY[i]
+                    );
 
-                writer.println(returningMsg);
+                    writer.println(returningMsg);
+                }
 
             }
         } catch (Exception ex) {
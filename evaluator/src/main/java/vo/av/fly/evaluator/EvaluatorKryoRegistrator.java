@@ -0,0 +1,24 @@
+package vo.av.fly.evaluator;
+
+import com.esotericsoftware.kryo.Kryo;
+import org.apache.spark.serializer.KryoRegistrator;
+import vo.av.fly.evaluator.geom.HeightFloor;
+import vo.av.fly.evaluator.geom.PointBlock;
+import vo.av.fly.evaluator.geom.SwathSegmentPoints;
+
+/**
+ * Register the classes needing custom Kryo serializers, and the broadcast values.
+ */
+public class EvaluatorKryoRegistrator implements KryoRegistrator {
+
+    @Override
+    public void registerClasses(Kryo kryo) {
+        kryo.register(SwathSegmentPoints.class, new SwathSegmentPointsSerializer());
+        kryo.register(HeightFloor.class);
+        kryo.register(PointBlock.class);
+        kryo.register(byte[].class);
+        kryo.register(int[].class);
+        kryo.register(long[].class);
+        kryo.register(double[].class);
+    }
+}
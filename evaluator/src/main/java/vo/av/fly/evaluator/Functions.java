@@ -1,36 +1,396 @@
 package vo.av.fly.evaluator;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
+import scala.Tuple2;
 import vo.av.fly.evaluator.geom.ImmutableBasePoint;
+import vo.av.fly.evaluator.geom.PointBlock;
+import vo.av.fly.evaluator.geom.SwathSegmentPoints;
+import vo.av.fly.evaluator.las.LasInputFormat;
+import vo.av.fly.evaluator.las.LasPoint;
+import vo.av.fly.evaluator.store.PointChunk;
+import vo.av.fly.evaluator.store.PointStoreInputFormat;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 public class Functions {
+    public static final String POINT_STORE_EXTENSION = "pstore";
+    private static final double[] NO_OFFSET = new double[3];
 
     /**
-     * Parse points from text file
+     * Encode the points of every partition into compact blocks, see {@link PointBlock}.
+     *
+     * @param resolution quantisation step of the coordinates
      * @return
      */
-    public static FlatMapFunction<String, ImmutableBasePoint> parsePoints(final double[] offset){
-        return new FlatMapFunction<String, ImmutableBasePoint>() {
-            private static final long serialVersionUID = 4355382009407212231L;
+    public static FlatMapFunction<Iterator<ImmutableBasePoint>, PointBlock> toBlocks(final double resolution) {
+        return new FlatMapFunction<Iterator<ImmutableBasePoint>, PointBlock>() {
+            private static final long serialVersionUID = -1462270236329846727L;
 
             @Override
-            public Iterator<ImmutableBasePoint> call(String line) throws Exception {
-                final double[] coordinate = new double[3];
-                //final float surfaceDensityIndex;
-
-                final String[] tokens = line.split(",");
-                for (int i = 0; i < 3; i++) {
-                    coordinate[i] = Double.parseDouble(tokens[i]) - offset[i];
+            public Iterator<PointBlock> call(Iterator<ImmutableBasePoint> points) {
+                final SwathSegmentPoints buffer = new SwathSegmentPoints();
+                while (points.hasNext()) {
+                    buffer.add(points.next());
                 }
-                //surfaceDensityIndex = Float.parseFloat(tokens[3]);
+                return PointBlock.encode(buffer, resolution).iterator();
+            }
+        };
+    }
 
-                ImmutableBasePoint sample = ImmutableBasePoint.valueOf(coordinate);
+    /**
+     * Decode the points of blocks encoded by {@link #toBlocks(double)}, on the fly.
+     *
+     * @return
+     */
+    public static FlatMapFunction<Iterator<PointBlock>, ImmutableBasePoint> fromBlocks() {
+        return new FlatMapFunction<Iterator<PointBlock>, ImmutableBasePoint>() {
+            private static final long serialVersionUID = 8370120519370913367L;
 
-                return Collections.singletonList(sample).iterator();
+            @Override
+            public Iterator<ImmutableBasePoint> call(Iterator<PointBlock> blocks) {
+                return PointBlock.points(blocks);
             }
         };
     }
+
+    /**
+     * Parse the values of the {@code classes} option.
+     *
+     * @param values
+     * @return classifications, or null if the option is not set
+     */
+    public static int[] parseClasses(String[] values) {
+        if (values == null) {
+            return null;
+        }
+        final int[] classes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            classes[i] = Integer.parseInt(values[i].trim());
+        }
+        return classes;
+    }
+
+    /**
+     * Parse the values of the {@code bbox} option.
+     *
+     * @param values
+     * @return min x, min y, max x, max y, or null if the option is not set
+     */
+    public static double[] parseBoundingBox(String[] values) {
+        if (values == null) {
+            return null;
+        }
+        final double[] bbox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bbox[i] = Double.parseDouble(values[i]);
+        }
+        return bbox;
+    }
+
+    /**
+     * Read a point cloud, from point stores for the files ending with {@code .pstore}, from LAS files for those ending
+     * with {@code .las}, and from text files for the others. The path may list files, directories or globs, separated
+     * by commas, as for {@link FileInputFormat}; the format is chosen file by file, so that a directory of LAS tiles is
+     * read as LAS.
+     *
+     * @param sc
+     * @param path
+     * @param partitions min number of partitions
+     * @param offset point cloud offset, subtracted from the coordinates
+     * @param classes classifications of the points to keep, or null to keep all the points; LAS files only
+     * @param bbox horizontal bounding box of the points to keep, before the offset, or null to keep all the points
+     * @return
+     * @throws IOException
+     */
+    public static JavaRDD<ImmutableBasePoint> readPoints(JavaSparkContext sc, String path, int partitions,
+                                                         double[] offset, int[] classes, double[] bbox)
+            throws IOException {
+        final StringBuilder stores = new StringBuilder();
+        final StringBuilder las = new StringBuilder();
+        final StringBuilder text = new StringBuilder();
+        for (Path file : inputFiles(sc.hadoopConfiguration(), path)) {
+            final String name = file.getName().toLowerCase();
+            final StringBuilder files = name.endsWith("." + POINT_STORE_EXTENSION) ? stores
+                    : name.endsWith(".las") || name.endsWith(".laz") ? las
+                    : text;
+            files.append(files.length() == 0 ? "" : ",").append(file);
+        }
+
+        JavaRDD<ImmutableBasePoint> points = null;
+        if (stores.length() > 0) {
+            points = readPointStore(sc, stores.toString(), partitions, offset, bbox);
+        }
+        if (las.length() > 0) {
+            final JavaRDD<ImmutableBasePoint> lasPoints = readLasPoints(sc, las.toString(), partitions, offset, classes, bbox);
+            points = points == null ? lasPoints : points.union(lasPoints);
+        }
+        if (text.length() > 0 || points == null) { // nothing found: let Hadoop report the missing input
+            final JavaRDD<ImmutableBasePoint> textPoints = readTextPoints(
+                    sc, text.length() > 0 ? text.toString() : path, partitions, offset, bbox
+            );
+            points = points == null ? textPoints : points.union(textPoints);
+        }
+        return points;
+    }
+
+    /**
+     * Input files of a path, as listed by {@link FileInputFormat}: the files or globs of a comma-separated list, and
+     * the files directly within the directories, except the hidden files starting with {@code _} or {@code .}.
+     *
+     * @param conf
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static List<Path> inputFiles(Configuration conf, String path) throws IOException {
+        final List<Path> files = new ArrayList();
+        for (Path input : FileInputFormat.getInputPaths(inputConf(conf, path))) {
+            final FileSystem fs = input.getFileSystem(conf);
+            final FileStatus[] statuses = fs.globStatus(input, VISIBLE);
+            if (statuses == null) {
+                continue;
+            }
+            for (FileStatus status : statuses) {
+                if (status.isDirectory()) {
+                    final List<Path> children = new ArrayList();
+                    for (FileStatus child : fs.listStatus(status.getPath(), VISIBLE)) {
+                        if (child.isFile()) {
+                            children.add(child.getPath());
+                        }
+                    }
+                    Collections.sort(children);
+                    files.addAll(children);
+                } else {
+                    files.add(status.getPath());
+                }
+            }
+        }
+        return files;
+    }
+
+    private static JobConf inputConf(Configuration conf, String path) {
+        final JobConf job = new JobConf(conf);
+        FileInputFormat.setInputPaths(job, path);
+        return job;
+    }
+
+    private static final PathFilter VISIBLE = new PathFilter() {
+        @Override
+        public boolean accept(Path path) {
+            final String name = path.getName();
+            return !name.startsWith("_") && !name.startsWith(".");
+        }
+    };
+
+    /**
+     * Read a point cloud from text files, one x,y,z point per line.
+     * <p>
+     * The lines are parsed from the bytes read by Hadoop, see {@link PointParser}, without building a {@code String}
+     * per line.
+     *
+     * @param sc
+     * @param path
+     * @param partitions min number of partitions
+     * @param offset point cloud offset, subtracted from the coordinates
+     * @param bbox horizontal bounding box of the points to keep, before the offset, or null to keep all the points
+     * @return
+     */
+    public static JavaRDD<ImmutableBasePoint> readTextPoints(JavaSparkContext sc, String path, int partitions,
+                                                             final double[] offset, final double[] bbox) {
+        return sc.hadoopFile(path, TextInputFormat.class, LongWritable.class, Text.class, partitions).mapPartitions(
+                new FlatMapFunction<Iterator<Tuple2<LongWritable, Text>>, ImmutableBasePoint>() {
+                    private static final long serialVersionUID = -2395046131279411482L;
+
+                    @Override
+                    public Iterator<ImmutableBasePoint> call(final Iterator<Tuple2<LongWritable, Text>> lines) {
+                        return new Points(offset, bbox) {
+                            @Override
+                            protected boolean read(double[] xyz) {
+                                if (!lines.hasNext()) {
+                                    return false;
+                                }
+                                final Text line = lines.next()._2(); // reused by the record reader
+                                PointParser.parse(line.getBytes(), 0, line.getLength(), NO_OFFSET, xyz);
+                                return true;
+                            }
+                        };
+                    }
+                }
+        );
+    }
+
+    /**
+     * Read a point cloud from LAS files.
+     *
+     * @param sc
+     * @param path
+     * @param partitions min number of partitions
+     * @param offset point cloud offset, subtracted from the coordinates
+     * @param classes classifications of the points to keep, or null to keep all the points
+     * @param bbox horizontal bounding box of the points to keep, before the offset, or null to keep all the points
+     * @return
+     */
+    public static JavaRDD<ImmutableBasePoint> readLasPoints(JavaSparkContext sc, String path, int partitions,
+                                                            final double[] offset, int[] classes, final double[] bbox) {
+        final boolean[] keep;
+        if (classes == null) {
+            keep = null;
+        } else {
+            keep = new boolean[256];
+            for (int c : classes) {
+                if (c < 0 || c >= keep.length) {
+                    throw new IllegalArgumentException("Invalid LAS classification " + c);
+                }
+                keep[c] = true;
+            }
+        }
+
+        return sc.hadoopFile(path, LasInputFormat.class, LongWritable.class, LasPoint.class, partitions).mapPartitions(
+                new FlatMapFunction<Iterator<Tuple2<LongWritable, LasPoint>>, ImmutableBasePoint>() {
+                    private static final long serialVersionUID = 6114963212371958218L;
+
+                    @Override
+                    public Iterator<ImmutableBasePoint> call(final Iterator<Tuple2<LongWritable, LasPoint>> records) {
+                        return new Points(offset, bbox) {
+                            @Override
+                            protected boolean read(double[] xyz) {
+                                while (records.hasNext()) {
+                                    final LasPoint point = records.next()._2(); // reused by the record reader
+                                    if (keep == null || keep[point.classification()]) {
+                                        System.arraycopy(point.xyz(), 0, xyz, 0, 3);
+                                        return true;
+                                    }
+                                }
+                                return false;
+                            }
+                        };
+                    }
+                }
+        );
+    }
+
+    /**
+     * Read a point cloud from point store files, see {@link vo.av.fly.evaluator.pre.BuildPointStore}. The chunks of
+     * the store outside the bounding box are not read.
+     *
+     * @param sc
+     * @param path
+     * @param partitions min number of partitions
+     * @param offset point cloud offset, subtracted from the coordinates
+     * @param bbox horizontal bounding box of the points to keep, before the offset, or null to keep all the points
+     * @return
+     */
+    public static JavaRDD<ImmutableBasePoint> readPointStore(JavaSparkContext sc, String path, int partitions,
+                                                             final double[] offset, final double[] bbox) {
+        final JobConf job = new JobConf(sc.hadoopConfiguration());
+        FileInputFormat.setInputPaths(job, path);
+        PointStoreInputFormat.setBoundingBox(job, bbox);
+
+        return sc.hadoopRDD(job, PointStoreInputFormat.class, LongWritable.class, PointChunk.class, partitions).mapPartitions(
+                new FlatMapFunction<Iterator<Tuple2<LongWritable, PointChunk>>, ImmutableBasePoint>() {
+                    private static final long serialVersionUID = -8496025377151869413L;
+
+                    @Override
+                    public Iterator<ImmutableBasePoint> call(final Iterator<Tuple2<LongWritable, PointChunk>> chunks) {
+                        return new Points(offset, bbox) {
+                            private PointChunk chunk; // reused by the record reader
+                            private int i = 0;
+
+                            @Override
+                            protected boolean read(double[] xyz) {
+                                while (chunk == null || i == chunk.count()) {
+                                    if (!chunks.hasNext()) {
+                                        return false;
+                                    }
+                                    chunk = chunks.next()._2();
+                                    i = 0;
+                                }
+                                xyz[0] = chunk.x(i);
+                                xyz[1] = chunk.y(i);
+                                xyz[2] = chunk.z(i);
+                                i++;
+                                return true;
+                            }
+                        };
+                    }
+                }
+        );
+    }
+
+    /**
+     * Test whether a point is within a horizontal bounding box.
+     *
+     * @param bbox min x, min y, max x, max y, or null for no bounding box
+     * @param x
+     * @param y
+     * @return
+     */
+    public static boolean within(double[] bbox, double x, double y) {
+        return bbox == null || (x >= bbox[0] && x <= bbox[2] && y >= bbox[1] && y <= bbox[3]);
+    }
+
+    /**
+     * Points read from the records of a partition, kept if within a bounding box, then offset.
+     */
+    private abstract static class Points implements Iterator<ImmutableBasePoint> {
+        private final double[] offset;
+        private final double[] bbox;
+        private final double[] xyz = new double[3];
+        private boolean ready = false;
+
+        Points(double[] offset, double[] bbox) {
+            this.offset = offset;
+            this.bbox = bbox;
+        }
+
+        /**
+         * Read the next point, before the offset.
+         *
+         * @param xyz
+         * @return false if there is no more point
+         */
+        protected abstract boolean read(double[] xyz);
+
+        @Override
+        public boolean hasNext() {
+            while (!ready) {
+                if (!read(xyz)) {
+                    return false;
+                }
+                ready = within(bbox, xyz[0], xyz[1]);
+            }
+            return true;
+        }
+
+        @Override
+        public ImmutableBasePoint next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return ImmutableBasePoint.valueOf(xyz[0] - offset[0], xyz[1] - offset[1], xyz[2] - offset[2]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
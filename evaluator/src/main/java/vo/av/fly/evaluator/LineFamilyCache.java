@@ -0,0 +1,96 @@
+package vo.av.fly.evaluator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Numbers of interpolated pulses of the two families of flight lines of the evaluated flight grids, for the next flight
+ * grids sharing one of the families.
+ * <p>
+ * The fitness of a flight grid is the sum of its lines of flying direction true, at constant x in the frame of the
+ * flight grid, and of its lines of flying direction false, at constant y. Shifting the flight grid along a family of
+ * lines by a multiple of the sample spacing only renumbers its swath segments: the pulses of the flying direction true
+ * then only depend on the orientation and the shift in x, and those of the flying direction false on the orientation and
+ * the shift in y.
+ */
+public class LineFamilyCache {
+    private final double sampleSpacing;
+    private final Map<Key, Integer> pulses = new HashMap();
+
+    /**
+     * Constructor.
+     *
+     * @param sampleSpacing
+     */
+    public LineFamilyCache(double sampleSpacing) {
+        this.sampleSpacing = sampleSpacing;
+    }
+
+    /**
+     * @param flyingDirection
+     * @param orientation
+     * @param shiftX
+     * @param shiftY
+     * @return number of interpolated pulses of the lines of the flying direction, or null if not cached
+     */
+    public Integer get(boolean flyingDirection, double orientation, double shiftX, double shiftY) {
+        if (!isShared(flyingDirection ? shiftY : shiftX)) {
+            return null;
+        }
+        return pulses.get(new Key(flyingDirection, orientation, flyingDirection ? shiftX : shiftY));
+    }
+
+    /**
+     * Cache the number of interpolated pulses of the lines of a flying direction, unless the flight grid is shifted
+     * along these lines by a fraction of the sample spacing.
+     *
+     * @param flyingDirection
+     * @param orientation
+     * @param shiftX
+     * @param shiftY
+     * @param numberOfPulses
+     */
+    public void put(boolean flyingDirection, double orientation, double shiftX, double shiftY, int numberOfPulses) {
+        if (isShared(flyingDirection ? shiftY : shiftX)) {
+            pulses.put(new Key(flyingDirection, orientation, flyingDirection ? shiftX : shiftY), numberOfPulses);
+        }
+    }
+
+    /**
+     * @param shift shift along the lines
+     * @return whether the shift is a multiple of the sample spacing, up to the rounding errors
+     */
+    private boolean isShared(double shift) {
+        final double samples = shift / sampleSpacing;
+        return Math.abs(samples - Math.rint(samples)) < 1e-9;
+    }
+
+    private static final class Key {
+        private final boolean flyingDirection;
+        private final long orientation;
+        private final long shift;
+
+        Key(boolean flyingDirection, double orientation, double shift) {
+            this.flyingDirection = flyingDirection;
+            this.orientation = Double.doubleToLongBits(orientation);
+            this.shift = Double.doubleToLongBits(shift);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return flyingDirection == that.flyingDirection && orientation == that.orientation && shift == that.shift;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = flyingDirection ? 1 : 0;
+            hash = 31 * hash + (int) (orientation ^ (orientation >>> 32));
+            hash = 31 * hash + (int) (shift ^ (shift >>> 32));
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package vo.av.fly.evaluator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser of the x,y,z coordinates of a point cloud in text format, straight from the bytes of a line.
+ * <p>
+ * The values are parsed without going through {@code String}s in the common case of plain decimal numbers (with an
+ * optional sign, fraction and exponent) of up to 15 significant digits, which are converted exactly as
+ * {@link Double#parseDouble(String)} would. Any other value is handed over to {@link Double#parseDouble(String)}.
+ */
+public final class PointParser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_DIGITS = 18; // fit in a long
+
+    private PointParser() {
+    }
+
+    /**
+     * Parse the first 3 comma separated values of a line, minus the offset.
+     *
+     * @param bytes
+     * @param from first byte of the line
+     * @param to end of the line, exclusive
+     * @param offset point cloud offset
+     * @param xyz parsed coordinates
+     * @throws NumberFormatException if the line has less than 3 values, or a value is not a number
+     */
+    public static void parse(byte[] bytes, int from, int to, double[] offset, double[] xyz) {
+        int start = from;
+        for (int i = 0; i < 3; i++) {
+            int end = start;
+            while (end < to && bytes[end] != ',') {
+                end++;
+            }
+            if (end == to && i < 2) {
+                throw new NumberFormatException(
+                        "Expecting 3 coordinates: " + new String(bytes, from, to - from, StandardCharsets.UTF_8)
+                );
+            }
+            xyz[i] = parseDouble(bytes, start, end) - offset[i];
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Parse a value.
+     *
+     * @param bytes
+     * @param from
+     * @param to exclusive
+     * @return same as {@link Double#parseDouble(String)}
+     * @throws NumberFormatException
+     */
+    public static double parseDouble(byte[] bytes, int from, int to) {
+        // blanks are ignored, as by Double.parseDouble
+        int i = from, end = to;
+        while (i < end && (bytes[i] & 0xFF) <= ' ') {
+            i++;
+        }
+        while (end > i && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0; // significant digits in the mantissa
+        int exponent = 0;
+        boolean anyDigit = false;
+
+        for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+            anyDigit = true;
+            if (digits > 0 || bytes[i] != '0') {
+                if (++digits > MAX_DIGITS) {
+                    return slowParseDouble(bytes, from, to);
+                }
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+            }
+        }
+        if (i < end && bytes[i] == '.') {
+            for (i++; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                anyDigit = true;
+                if (digits > 0 || bytes[i] != '0') {
+                    if (++digits > MAX_DIGITS) {
+                        return slowParseDouble(bytes, from, to);
+                    }
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                }
+                exponent--;
+            }
+        }
+        if (!anyDigit) {
+            return slowParseDouble(bytes, from, to);
+        }
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return slowParseDouble(bytes, from, to);
+            }
+            int e = 0;
+            for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                if (e > 1000) {
+                    return slowParseDouble(bytes, from, to);
+                }
+                e = e * 10 + (bytes[i] - '0');
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end) {
+            return slowParseDouble(bytes, from, to); // e.g. NaN, Infinity, hexadecimal or type suffixes
+        }
+
+        // both operands are exact, so the result is rounded once, as by Double.parseDouble
+        if (mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return slowParseDouble(bytes, from, to);
+        }
+        final double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(byte[] bytes, int from, int to) {
+        return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,116 @@
+package vo.av.fly.evaluator;
+
+import vo.av.fly.evaluator.geom.*;
+
+/**
+ * Count the interpolated pulses of swath segments, one after the other, reusing the same ray casting for all of them.
+ * <p>
+ * The count of a swath segment depends on the order of its points, even with a unique v per u, so the points are sorted
+ * first: the count is then the same whatever the partitions, tiles or blocks the points were gathered from.
+ * <p>
+ * With a {@link SegmentMemo}, the counts are memoised, see {@link #memoised(long)}.
+ */
+public class PulseCounter {
+    private final double lineSpacing;
+    private final double sampleSpacing;
+    private final double altitude;
+    private final double angularResolution;
+    private final double minAngle;
+    private final double maxAngle;
+    private final boolean uniqueVPerU;
+    private final SegmentMemo memo;
+    private final RigidTransform2D transformation;
+
+    private RayCasting visibilityComputation = null;
+
+    /**
+     * Constructor.
+     *
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param altitude
+     * @param angularResolution
+     * @param minAngle
+     * @param maxAngle
+     * @param uniqueVPerU
+     */
+    public PulseCounter(double lineSpacing, double sampleSpacing, double altitude,
+                        double angularResolution, double minAngle, double maxAngle, boolean uniqueVPerU) {
+        this(lineSpacing, sampleSpacing, altitude, angularResolution, minAngle, maxAngle, uniqueVPerU, null, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param altitude
+     * @param angularResolution
+     * @param minAngle
+     * @param maxAngle
+     * @param uniqueVPerU
+     * @param memo memo of the counts, or null
+     * @param transformation transformation of the flight grid; may be null without memo
+     */
+    public PulseCounter(double lineSpacing, double sampleSpacing, double altitude,
+                        double angularResolution, double minAngle, double maxAngle, boolean uniqueVPerU,
+                        SegmentMemo memo, RigidTransform2D transformation) {
+        this.lineSpacing = lineSpacing;
+        this.sampleSpacing = sampleSpacing;
+        this.altitude = altitude;
+        this.angularResolution = angularResolution;
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+        this.uniqueVPerU = uniqueVPerU;
+        this.memo = memo;
+        this.transformation = transformation;
+    }
+
+    /**
+     * @param key swath segment, see {@link ImmutableSwathSegment#key(boolean, long, long)}
+     * @return memoised number of interpolated pulses of the swath segment, or -1 if unknown
+     */
+    public int memoised(long key) {
+        return memo == null ? -1 : memo.get(transformation, key);
+    }
+
+    /**
+     * Count the interpolated pulses of a swath segment, and memoise the count.
+     *
+     * @param key swath segment, see {@link ImmutableSwathSegment#key(boolean, long, long)}
+     * @param points points of the swath segment, in the frame of the flight grid; sorted, see
+     *               {@link SwathSegmentPoints#sort()}
+     * @return
+     */
+    public int count(long key, SwathSegmentPoints points) {
+        ImmutableSwathSegment centre = ImmutableSwathSegment.valueOf(key, lineSpacing, sampleSpacing, altitude);
+
+        Transformer transformer = centre.flyingDirection() ? new YTransformer(centre.y()) : new XTransformer(centre.x());
+
+        double[] aircraftPos = new double[]{
+                centre.x(),
+                centre.y(),
+                centre.z()
+        };
+
+        if (visibilityComputation == null) {
+            visibilityComputation = new RayCasting(
+                    aircraftPos,
+                    angularResolution,
+                    minAngle, maxAngle,
+                    uniqueVPerU,
+                    transformer
+            );
+        } else {
+            visibilityComputation.reset(aircraftPos, transformer);
+        }
+
+        points.sort();
+        visibilityComputation.add(points.x(), points.y(), points.z(), points.size());
+        final int numberOfPulses = visibilityComputation.countInterpolatedPulses();
+        if (memo != null) {
+            memo.put(transformation, key, numberOfPulses);
+        }
+        return numberOfPulses;
+    }
+}
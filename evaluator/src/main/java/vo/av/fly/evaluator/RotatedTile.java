@@ -0,0 +1,147 @@
+package vo.av.fly.evaluator;
+
+import vo.av.fly.evaluator.geom.HeightFloor;
+import vo.av.fly.evaluator.geom.ImmutableBasePoint;
+import vo.av.fly.evaluator.geom.PointBlock;
+import vo.av.fly.evaluator.geom.RigidTransform2D;
+import vo.av.fly.evaluator.geom.SwathSegmentPoints;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Points of a tile rotated into the orientation of a flight grid, and sorted by their rotated x and y coordinates.
+ * <p>
+ * The flight grids of the same orientation only differ by a translation, which keeps the order of the points: the
+ * points of a sample slice across the flight lines of any of these flight grids are a contiguous range of one of the
+ * orders.
+ */
+public class RotatedTile {
+    private final int size;
+    private final double[] x, y, z;
+    private final double[] zFloor;
+    private final int[] byX, byY;
+
+    private RotatedTile(int size, double[] x, double[] y, double[] z, double[] zFloor) {
+        this.size = size;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.zFloor = zFloor;
+        this.byX = order(x, size);
+        this.byY = order(y, size);
+    }
+
+    /**
+     * Rotate the points of a tile.
+     *
+     * @param blocks points of the tile
+     * @param transformation only the rotation is applied
+     * @param heightFloor lowest height around the points, or null
+     * @return
+     */
+    public static RotatedTile of(List<PointBlock> blocks, RigidTransform2D transformation, HeightFloor heightFloor) {
+        final SwathSegmentPoints points = new SwathSegmentPoints();
+        final Iterator<ImmutableBasePoint> samples = PointBlock.points(blocks.iterator());
+        while (samples.hasNext()) {
+            points.add(samples.next());
+        }
+
+        final int n = points.size();
+        final double[] x = new double[n], y = new double[n], z = new double[n], zFloor = new double[n];
+        for (int i = 0; i < n; i++) {
+            final double px = points.x()[i], py = points.y()[i];
+            x[i] = transformation.rotatedX(px, py);
+            y[i] = transformation.rotatedY(px, py);
+            z[i] = points.z()[i];
+            zFloor[i] = heightFloor == null ? Double.NaN : heightFloor.floor(px, py);
+        }
+        return new RotatedTile(n, x, y, z, zFloor);
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return rotated x coordinates
+     */
+    public double[] x() {
+        return x;
+    }
+
+    /**
+     * @return rotated y coordinates
+     */
+    public double[] y() {
+        return y;
+    }
+
+    public double[] z() {
+        return z;
+    }
+
+    /**
+     * @return lowest height around every point, see {@link HeightFloor#floor(double, double)}, or NaN
+     */
+    public double[] zFloor() {
+        return zFloor;
+    }
+
+    /**
+     * @return indices of the points by increasing rotated x
+     */
+    public int[] byX() {
+        return byX;
+    }
+
+    /**
+     * @return indices of the points by increasing rotated y
+     */
+    public int[] byY() {
+        return byY;
+    }
+
+    /**
+     * @return approximate memory footprint, in bytes
+     */
+    public long memory() {
+        return 4L * 8 * size + 2L * 4 * size + 6 * 16;
+    }
+
+    /**
+     * Stable merge sort of the indices of values.
+     *
+     * @param values
+     * @param n
+     * @return indices of the values by increasing value
+     */
+    private static int[] order(double[] values, int n) {
+        int[] src = new int[n], dst = new int[n];
+        for (int i = 0; i < n; i++) {
+            src[i] = i;
+        }
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += width << 1) {
+                final int mid = Math.min(lo + width, n), hi = Math.min(lo + (width << 1), n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    dst[k++] = values[src[j]] < values[src[i]] ? src[j++] : src[i++];
+                }
+                while (i < mid) {
+                    dst[k++] = src[i++];
+                }
+                while (j < hi) {
+                    dst[k++] = src[j++];
+                }
+            }
+            final int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        return src;
+    }
+}
@@ -0,0 +1,79 @@
+package vo.av.fly.evaluator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the {@link RotatedTile}s of an executor, by point cloud, tile and orientation, evicting the least recently
+ * used tiles beyond a memory budget.
+ */
+public final class RotatedTileCache {
+    private static final Map<Key, RotatedTile> TILES = new LinkedHashMap<Key, RotatedTile>(16, .75f, true);
+    private static long memory = 0;
+
+    private RotatedTileCache() {
+    }
+
+    /**
+     * @param cloud id of the tiled point cloud
+     * @param tile
+     * @param orientation
+     * @return rotated tile, or null if not cached
+     */
+    public static synchronized RotatedTile get(int cloud, long tile, double orientation) {
+        return TILES.get(new Key(cloud, tile, orientation));
+    }
+
+    /**
+     * Cache a rotated tile, unless larger than the budget.
+     *
+     * @param cloud id of the tiled point cloud
+     * @param tile
+     * @param orientation
+     * @param rotated
+     * @param budget memory budget of the cache, in bytes
+     */
+    public static synchronized void put(int cloud, long tile, double orientation, RotatedTile rotated, long budget) {
+        if (rotated.memory() > budget) {
+            return;
+        }
+        final RotatedTile previous = TILES.put(new Key(cloud, tile, orientation), rotated);
+        memory += rotated.memory() - (previous == null ? 0 : previous.memory());
+
+        final Iterator<RotatedTile> leastRecentlyUsed = TILES.values().iterator();
+        while (memory > budget) {
+            memory -= leastRecentlyUsed.next().memory();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private static final class Key {
+        private final int cloud;
+        private final long tile;
+        private final long orientation;
+
+        Key(int cloud, long tile, double orientation) {
+            this.cloud = cloud;
+            this.tile = tile;
+            this.orientation = Double.doubleToLongBits(orientation);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return cloud == that.cloud && tile == that.tile && orientation == that.orientation;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = cloud;
+            hash = 31 * hash + (int) (tile ^ (tile >>> 32));
+            hash = 31 * hash + (int) (orientation ^ (orientation >>> 32));
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package vo.av.fly.evaluator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.log4j.Logger;
+import vo.av.fly.evaluator.geom.ImmutableSwathSegment;
+import vo.av.fly.evaluator.geom.RigidTransform2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interpolated pulses of the swath segments evaluated by an executor, memoised in a memory-mapped hash file on its local
+ * disk, across the queries and the runs.
+ * <p>
+ * A swath segment is identified by its centre in the rotated frame of the point cloud, before the translation of the
+ * flight grid, so that the flight grids of the same orientation find the swath segments they share. The key also holds
+ * a fingerprint of the point cloud and of the evaluation parameters, see {@link #fingerprint(Configuration, String,
+ * String...)}, so that the pulses of another point cloud or of other parameters are never served. The counts do not
+ * depend on the partitions, tiles or blocks the points were gathered from, see {@link PulseCounter}, so the runs with
+ * other partitions or tiles share them.
+ * <p>
+ * The file holds a fixed number of buckets of {@link #WAYS} entries, a new entry evicting the least recently used entry
+ * of its bucket. Every executor locks a file of its own in the directory, left to the next executors on the host.
+ */
+public class SegmentMemo implements Serializable {
+    private static final long serialVersionUID = 2906713845201949171L;
+    private static final Logger LOGGER = Logger.getLogger(SegmentMemo.class);
+
+    public static final int WAYS = 8;
+    private static final int MAGIC = 0x464F534D;
+    private static final int VERSION = 2; // counts of sorted swath segments
+    private static final int HEADER_SIZE = 16; // magic, version, buckets, clock
+    private static final int ENTRY_SIZE = 24; // key (2 longs), pulses, last access
+    private static final double RESOLUTION = .001; // of the centres of the swath segments
+
+    private static final Map<String, Table> TABLES = new HashMap();
+
+    private final String directory;
+    private final long size;
+    private final long fingerprint;
+    private final double lineSpacing;
+    private final double sampleSpacing;
+
+    private transient boolean opened = false;
+    private transient Table table;
+
+    /**
+     * Constructor.
+     *
+     * @param directory local directory of the memo files, on every executor
+     * @param size size of the memo file of an executor, in bytes
+     * @param fingerprint fingerprint of the point cloud and of the evaluation parameters
+     * @param lineSpacing
+     * @param sampleSpacing
+     */
+    public SegmentMemo(String directory, long size, long fingerprint, double lineSpacing, double sampleSpacing) {
+        this.directory = directory;
+        this.size = size;
+        this.fingerprint = fingerprint;
+        this.lineSpacing = lineSpacing;
+        this.sampleSpacing = sampleSpacing;
+    }
+
+    /**
+     * Fingerprint of the files of a point cloud, from their paths, lengths and modification times, and of the parameters
+     * the pulses depend on.
+     *
+     * @param conf
+     * @param path files, directories or glob of the point cloud
+     * @param parameters
+     * @return
+     * @throws IOException
+     */
+    public static long fingerprint(Configuration conf, String path, String... parameters) throws IOException {
+        final List<String> files = new ArrayList();
+        for (String p : path.split(",")) {
+            final Path glob = new Path(p);
+            final FileSystem fs = glob.getFileSystem(conf);
+            final FileStatus[] statuses = fs.globStatus(glob);
+            if (statuses == null) {
+                continue;
+            }
+            for (FileStatus status : statuses) {
+                final RemoteIterator<LocatedFileStatus> leaves = fs.listFiles(status.getPath(), true);
+                while (leaves.hasNext()) {
+                    final LocatedFileStatus leaf = leaves.next();
+                    files.add(leaf.getPath() + "\t" + leaf.getLen() + "\t" + leaf.getModificationTime());
+                }
+            }
+        }
+        Collections.sort(files);
+
+        long hash = 0xcbf29ce484222325L;
+        for (String file : files) {
+            hash = hash(hash, file);
+        }
+        for (String parameter : parameters) {
+            hash = hash(hash, parameter);
+        }
+        return hash;
+    }
+
+    /**
+     * @param transformation transformation of the flight grid
+     * @param swathSegment see {@link ImmutableSwathSegment#key(boolean, long, long)}
+     * @return memoised number of interpolated pulses of the swath segment, or -1
+     */
+    public int get(RigidTransform2D transformation, long swathSegment) {
+        final Table table = table();
+        return table == null ? -1 : table.get(key(1, transformation, swathSegment), key(2, transformation, swathSegment));
+    }
+
+    /**
+     * Memoise the number of interpolated pulses of a swath segment.
+     *
+     * @param transformation transformation of the flight grid
+     * @param swathSegment see {@link ImmutableSwathSegment#key(boolean, long, long)}
+     * @param numberOfPulses
+     */
+    public void put(RigidTransform2D transformation, long swathSegment, int numberOfPulses) {
+        final Table table = table();
+        if (table != null) {
+            table.put(key(1, transformation, swathSegment), key(2, transformation, swathSegment), numberOfPulses);
+        }
+    }
+
+    /**
+     * Hash of a swath segment, from its centre before the translation of the flight grid.
+     *
+     * @param seed
+     * @param transformation
+     * @param swathSegment
+     * @return
+     */
+    private long key(long seed, RigidTransform2D transformation, long swathSegment) {
+        final ImmutableSwathSegment centre = ImmutableSwathSegment.valueOf(swathSegment, lineSpacing, sampleSpacing, 0);
+        long hash = mix(seed ^ fingerprint);
+        hash = mix(hash ^ Double.doubleToLongBits(transformation.angle()));
+        hash = mix(hash ^ (centre.flyingDirection() ? 1 : 0));
+        hash = mix(hash ^ Math.round((centre.x() - transformation.tx()) / RESOLUTION));
+        return mix(hash ^ Math.round((centre.y() - transformation.ty()) / RESOLUTION));
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ '\n') * 0x100000001b3L;
+    }
+
+    /**
+     * @return memo file of the executor, opened on first use, or null if it cannot be opened
+     */
+    private Table table() {
+        if (!opened) {
+            synchronized (TABLES) {
+                if (!TABLES.containsKey(directory)) {
+                    Table newTable = null;
+                    try {
+                        newTable = Table.open(new File(directory).getCanonicalFile(), size);
+                    } catch (IOException ex) {
+                        LOGGER.warn(String.format("Cannot memoise the swath segments in %s: %s", directory, ex));
+                    }
+                    TABLES.put(directory, newTable);
+                }
+                table = TABLES.get(directory);
+            }
+            opened = true;
+        }
+        return table;
+    }
+
+    /**
+     * Memory-mapped hash file.
+     */
+    private static final class Table {
+        private final MappedByteBuffer buffer;
+        private final int buckets;
+        private final FileLock lock; // held as long as the executor runs
+
+        private Table(MappedByteBuffer buffer, int buckets, FileLock lock) {
+            this.buffer = buffer;
+            this.buckets = buckets;
+            this.lock = lock;
+        }
+
+        /**
+         * Open the first memo file of a directory not locked by another executor, and reset it unless it has the
+         * expected layout.
+         *
+         * @param directory
+         * @param size
+         * @return
+         * @throws IOException
+         */
+        static Table open(File directory, long size) throws IOException {
+            final long maxBuckets = (Integer.MAX_VALUE - HEADER_SIZE) / (WAYS * ENTRY_SIZE);
+            final int buckets = (int) Math.max(1, Math.min(maxBuckets, (size - HEADER_SIZE) / (WAYS * ENTRY_SIZE)));
+            final long length = HEADER_SIZE + (long) buckets * WAYS * ENTRY_SIZE;
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException(String.format("Cannot create directory %s", directory));
+            }
+
+            for (int i = 0; ; i++) {
+                final File file = new File(directory, String.format("segments-%d.memo", i));
+                final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileLock lock;
+                try {
+                    lock = raf.getChannel().tryLock();
+                } catch (OverlappingFileLockException ex) {
+                    lock = null; // already open in this executor
+                }
+                if (lock == null) {
+                    raf.close();
+                    continue;
+                }
+
+                final boolean valid = raf.length() == length
+                        && raf.readInt() == MAGIC && raf.readInt() == VERSION && raf.readInt() == buckets;
+                if (!valid) {
+                    raf.setLength(0);
+                    raf.setLength(length);
+                }
+
+                final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+                if (!valid) {
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, VERSION);
+                    buffer.putInt(8, buckets);
+                }
+                LOGGER.info(String.format(
+                        "Memoise the swath segments in %s, %d entries%s",
+                        file, (long) buckets * WAYS, valid ? "" : " (new)"
+                ));
+                return new Table(buffer, buckets, lock);
+            }
+        }
+
+        synchronized int get(long k1, long k2) {
+            if (k1 == 0 && k2 == 0) {
+                k2 = 1;
+            }
+            final int first = HEADER_SIZE + bucket(k1) * WAYS * ENTRY_SIZE;
+            for (int entry = first; entry < first + WAYS * ENTRY_SIZE; entry += ENTRY_SIZE) {
+                if (buffer.getLong(entry) == k1 && buffer.getLong(entry + 8) == k2) {
+                    buffer.putInt(entry + 20, tick());
+                    return buffer.getInt(entry + 16);
+                }
+            }
+            return -1;
+        }
+
+        synchronized void put(long k1, long k2, int numberOfPulses) {
+            if (k1 == 0 && k2 == 0) {
+                k2 = 1;
+            }
+            final int clock = tick();
+            final int first = HEADER_SIZE + bucket(k1) * WAYS * ENTRY_SIZE;
+
+            // same key, else an empty entry, else the least recently used entry
+            int victim = first;
+            long victimAge = -1;
+            for (int entry = first; entry < first + WAYS * ENTRY_SIZE; entry += ENTRY_SIZE) {
+                final long e1 = buffer.getLong(entry), e2 = buffer.getLong(entry + 8);
+                final long age = e1 == k1 && e2 == k2 ? Long.MAX_VALUE
+                        : e1 == 0 && e2 == 0 ? Long.MAX_VALUE - 1
+                        : (clock - buffer.getInt(entry + 20)) & 0xFFFFFFFFL;
+                if (age > victimAge) {
+                    victim = entry;
+                    victimAge = age;
+                }
+            }
+
+            buffer.putLong(victim, k1);
+            buffer.putLong(victim + 8, k2);
+            buffer.putInt(victim + 16, numberOfPulses);
+            buffer.putInt(victim + 20, clock);
+        }
+
+        private int bucket(long k1) {
+            return (int) ((k1 >>> 1) % buckets);
+        }
+
+        private int tick() {
+            final int clock = buffer.getInt(12) + 1;
+            buffer.putInt(12, clock);
+            return clock;
+        }
+    }
+}
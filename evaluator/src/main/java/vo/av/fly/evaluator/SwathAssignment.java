@@ -0,0 +1,219 @@
+package vo.av.fly.evaluator;
+
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+import vo.av.fly.evaluator.geom.*;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Pair the samples of a partition with the swath segments covering them, keyed by
+ * {@link ImmutableSwathSegment#key(boolean, long, long)}.
+ * <p>
+ * The flight lines covering a sample are a range of line indices around the closest line, which is computed from the
+ * swath width instead of walking the lines one by one; the pairs are then emitted on demand, without building a
+ * collection per sample.
+ * <p>
+ * The samples are paired as they are, in the frame of the point cloud: the transformation into the frame of the flight
+ * grid is only used to find their swath segments, and must be applied again to the points of a swath segment.
+ */
+public class SwathAssignment implements PairFlatMapFunction<Iterator<ImmutableBasePoint>, Long, ImmutableBasePoint> {
+    private static final long serialVersionUID = -3861447071580311726L;
+
+    private final RigidTransform2D transformation;
+    private final double lineSpacing;
+    private final double sampleSpacing;
+    private final double halfSwathWidth;
+    private final FieldOfView fieldOfView;
+    private final Broadcast<HeightFloor> heightFloor;
+    private final Boolean flyingDirection;
+
+    /**
+     * Constructor, pairing the samples in both flying directions.
+     *
+     * @param transformation transformation of the samples into the frame of the flight grid
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param halfSwathWidth
+     * @param fieldOfView field of view across the flight lines, or null to keep all the flight lines within the swath
+     * @param heightFloor lowest height around the samples, before the transformations; may be null without field of view
+     */
+    public SwathAssignment(
+            RigidTransform2D transformation,
+            double lineSpacing,
+            double sampleSpacing,
+            double halfSwathWidth,
+            FieldOfView fieldOfView,
+            Broadcast<HeightFloor> heightFloor
+    ) {
+        this(transformation, lineSpacing, sampleSpacing, halfSwathWidth, fieldOfView, heightFloor, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param transformation transformation of the samples into the frame of the flight grid
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param halfSwathWidth
+     * @param fieldOfView field of view across the flight lines, or null to keep all the flight lines within the swath
+     * @param heightFloor lowest height around the samples, before the transformations; may be null without field of view
+     * @param flyingDirection only flying direction to pair the samples in, or null for both
+     */
+    public SwathAssignment(
+            RigidTransform2D transformation,
+            double lineSpacing,
+            double sampleSpacing,
+            double halfSwathWidth,
+            FieldOfView fieldOfView,
+            Broadcast<HeightFloor> heightFloor,
+            Boolean flyingDirection
+    ) {
+        this.transformation = transformation;
+        this.lineSpacing = lineSpacing;
+        this.sampleSpacing = sampleSpacing;
+        this.halfSwathWidth = halfSwathWidth;
+        this.fieldOfView = fieldOfView;
+        this.heightFloor = heightFloor;
+        this.flyingDirection = flyingDirection;
+    }
+
+    @Override
+    public Iterator<Tuple2<Long, ImmutableBasePoint>> call(Iterator<ImmutableBasePoint> samples) {
+        return new Pairs(samples);
+    }
+
+    /**
+     * Number of flight lines covering a sample on one side of its closest line.
+     *
+     * @param anchor coordinate of the sample across the flight lines
+     * @param closestLine coordinate of the closest flight line
+     * @param lineSpacing
+     * @param halfSwathWidth
+     * @param left true for the lines up to the closest line included, false for the lines after it
+     * @return
+     */
+    static long coveringLines(double anchor, double closestLine, double lineSpacing, double halfSwathWidth, boolean left) {
+        final double offset = left ? anchor - closestLine : closestLine - anchor;
+        long n = Math.max(0, (long) Math.floor((halfSwathWidth - offset) / lineSpacing) + (left ? 1 : 0));
+
+        // settle the rounding errors against the test of every single line
+        while (n > 0 && !covers(anchor, closestLine, lineSpacing, halfSwathWidth, left, left ? n - 1 : n)) {
+            n--;
+        }
+        while (covers(anchor, closestLine, lineSpacing, halfSwathWidth, left, left ? n : n + 1)) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Coordinate of a flight line across the flight lines, from the closest line of a sample.
+     *
+     * @param closestLine coordinate of the closest flight line
+     * @param closestLineIdx index of the closest flight line
+     * @param idx index of the flight line
+     * @param lineSpacing
+     * @return
+     */
+    static double lineAnchor(double closestLine, long closestLineIdx, long idx, double lineSpacing) {
+        return idx <= closestLineIdx
+                ? closestLine - (lineSpacing * (closestLineIdx - idx))
+                : closestLine + (lineSpacing * (idx - closestLineIdx));
+    }
+
+    private static boolean covers(double anchor, double closestLine, double lineSpacing, double halfSwathWidth,
+                                  boolean left, long i) {
+        return left
+                ? anchor - (closestLine - (lineSpacing * i)) <= halfSwathWidth
+                : (closestLine + (lineSpacing * i)) - anchor <= halfSwathWidth;
+    }
+
+    /**
+     * Pairs of the samples of a partition, in both flying directions unless restricted to one.
+     */
+    private final class Pairs implements Iterator<Tuple2<Long, ImmutableBasePoint>> {
+        private final Iterator<ImmutableBasePoint> samples;
+
+        private ImmutableBasePoint sample;
+        private double x, y; // in the frame of the flight grid
+        private double zFloor;
+        private boolean flyingDirection;
+
+        private double anchor;
+        private double closestLine;
+        private long closestLineIdx;
+        private long closestSampleIdx;
+        private long lineIdx = 0, lastLineIdx = -1; // next line to pair, last line covering the sample
+
+        private Tuple2<Long, ImmutableBasePoint> next;
+
+        Pairs(Iterator<ImmutableBasePoint> samples) {
+            this.samples = samples;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Tuple2<Long, ImmutableBasePoint> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Tuple2<Long, ImmutableBasePoint> pair = next;
+            next = null;
+            return pair;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private Tuple2<Long, ImmutableBasePoint> advance() {
+            while (true) {
+                while (lineIdx <= lastLineIdx) {
+                    final long idx = lineIdx++;
+                    final double lineAnchor = lineAnchor(closestLine, closestLineIdx, idx, lineSpacing);
+                    if (fieldOfView == null || fieldOfView.mayReach(anchor - lineAnchor, zFloor)) {
+                        return new Tuple2<Long, ImmutableBasePoint>(
+                                ImmutableSwathSegment.key(flyingDirection, idx, closestSampleIdx), sample
+                        );
+                    }
+                }
+
+                if (sample != null && flyingDirection && SwathAssignment.this.flyingDirection == null) {
+                    start(false);
+                } else if (samples.hasNext()) {
+                    sample = samples.next();
+                    x = transformation.x(sample.x(), sample.y());
+                    y = transformation.y(sample.x(), sample.y());
+                    zFloor = heightFloor == null ? Double.NaN : heightFloor.getValue().floor(sample.x(), sample.y());
+                    start(SwathAssignment.this.flyingDirection == null || SwathAssignment.this.flyingDirection);
+                } else {
+                    return null;
+                }
+            }
+        }
+
+        private void start(boolean flyingDirection) {
+            this.flyingDirection = flyingDirection;
+            anchor = flyingDirection ? x : y;
+            final double coordinate = flyingDirection ? y : x;
+
+            closestLineIdx = Math.round(anchor / lineSpacing);
+            closestLine = closestLineIdx * lineSpacing;
+            closestSampleIdx = Math.round(coordinate / sampleSpacing);
+
+            lineIdx = closestLineIdx - coveringLines(anchor, closestLine, lineSpacing, halfSwathWidth, true) + 1;
+            lastLineIdx = closestLineIdx + coveringLines(anchor, closestLine, lineSpacing, halfSwathWidth, false);
+        }
+    }
+}
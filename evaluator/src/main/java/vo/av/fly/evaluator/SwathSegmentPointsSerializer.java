@@ -0,0 +1,36 @@
+package vo.av.fly.evaluator;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import vo.av.fly.evaluator.geom.SwathSegmentPoints;
+
+/**
+ * Kryo serializer of {@link SwathSegmentPoints}: the number of points followed by the xyz coordinates of every point,
+ * without the unused capacity of the buffer.
+ */
+public class SwathSegmentPointsSerializer extends Serializer<SwathSegmentPoints> {
+
+    @Override
+    public void write(Kryo kryo, Output output, SwathSegmentPoints points) {
+        final int n = points.size();
+        output.writeInt(n, true);
+        final double[] x = points.x(), y = points.y(), z = points.z();
+        for (int i = 0; i < n; i++) {
+            output.writeDouble(x[i]);
+            output.writeDouble(y[i]);
+            output.writeDouble(z[i]);
+        }
+    }
+
+    @Override
+    public SwathSegmentPoints read(Kryo kryo, Input input, Class<SwathSegmentPoints> type) {
+        final int n = input.readInt(true);
+        final SwathSegmentPoints points = new SwathSegmentPoints(n);
+        for (int i = 0; i < n; i++) {
+            points.add(input.readDouble(), input.readDouble(), input.readDouble());
+        }
+        return points;
+    }
+}
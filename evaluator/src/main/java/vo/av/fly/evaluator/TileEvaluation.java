@@ -0,0 +1,354 @@
+package vo.av.fly.evaluator;
+
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+import vo.av.fly.evaluator.geom.*;
+
+import java.util.*;
+
+/**
+ * Count the interpolated pulses of a batch of flight grids from the tiles of the point cloud, without shuffling the
+ * points.
+ * <p>
+ * Every swath segment is evaluated by a single tile, the one containing its centre, from the points of the tile and of
+ * its halo. The halo must be wide enough for the tile to hold all the points of the swath segments it evaluates, see
+ * {@link #halo(double, double)}.
+ * <p>
+ * The points of a tile are rotated into the orientation of the flight grid and sorted once per orientation, see
+ * {@link RotatedTile}, and, given a budget, kept in the {@link RotatedTileCache} of the executor for the next flight
+ * grids of the same orientation. The swath segments are then gathered one sample slice after the other, walking the
+ * sorted points, with the same pairing as {@link SwathAssignment}. The swath segments memoised in a {@link SegmentMemo}
+ * are not gathered.
+ * <p>
+ * Every swath segment thus gets the same points as without tiles, in another order, which the {@link PulseCounter}
+ * sorts before counting the pulses: the tiling does not change the fitness.
+ * <p>
+ * Every partition returns its numbers of interpolated pulses of every flight grid of the batch, in the flying directions
+ * true and false, in this order.
+ */
+public class TileEvaluation implements FlatMapFunction<Iterator<Tuple2<Long, List<PointBlock>>>, int[]> {
+    private static final long serialVersionUID = -4306751512813725174L;
+
+    private static final SwathSegmentPoints NOT_EVALUATED = new SwathSegmentPoints(0);
+    private static final SwathSegmentPoints MEMOISED = new SwathSegmentPoints(0);
+
+    private final int cloud;
+    private final Tiling tiling;
+    private final RigidTransform2D[] transformations;
+    private final double lineSpacing;
+    private final double sampleSpacing;
+    private final double altitude;
+    private final double halfSwathWidth;
+    private final FieldOfView fieldOfView;
+    private final Broadcast<HeightFloor> heightFloor;
+    private final double angularResolution;
+    private final double minAngle;
+    private final double maxAngle;
+    private final boolean uniqueVPerU;
+    private final Boolean[] flyingDirections;
+    private final long cacheBudget;
+    private final SegmentMemo memo;
+
+    /**
+     * Constructor.
+     *
+     * @param cloud id of the tiled point cloud, for the cache of the rotated tiles
+     * @param tiling tiling of the point cloud
+     * @param transformations transformation of the samples into the frame of every flight grid
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param altitude
+     * @param halfSwathWidth
+     * @param fieldOfView field of view across the flight lines, or null to keep all the flight lines within the swath
+     * @param heightFloor lowest height around the samples, before the transformations; may be null without field of view
+     * @param angularResolution
+     * @param minAngle
+     * @param maxAngle
+     * @param uniqueVPerU
+     * @param flyingDirections only flying direction to evaluate for every flight grid, or null for both
+     * @param cacheBudget memory budget of the rotated tiles per executor, in bytes, or 0 not to cache them
+     * @param memo memo of the swath segments, or null
+     */
+    public TileEvaluation(
+            int cloud,
+            Tiling tiling,
+            RigidTransform2D[] transformations,
+            double lineSpacing,
+            double sampleSpacing,
+            double altitude,
+            double halfSwathWidth,
+            FieldOfView fieldOfView,
+            Broadcast<HeightFloor> heightFloor,
+            double angularResolution,
+            double minAngle,
+            double maxAngle,
+            boolean uniqueVPerU,
+            Boolean[] flyingDirections,
+            long cacheBudget,
+            SegmentMemo memo
+    ) {
+        this.cloud = cloud;
+        this.tiling = tiling;
+        this.transformations = transformations;
+        this.lineSpacing = lineSpacing;
+        this.sampleSpacing = sampleSpacing;
+        this.altitude = altitude;
+        this.halfSwathWidth = halfSwathWidth;
+        this.fieldOfView = fieldOfView;
+        this.heightFloor = heightFloor;
+        this.angularResolution = angularResolution;
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+        this.uniqueVPerU = uniqueVPerU;
+        this.flyingDirections = flyingDirections;
+        this.cacheBudget = cacheBudget;
+        this.memo = memo;
+    }
+
+    /**
+     * Width of the halo holding all the points of the swath segments centred in a tile: a point of a swath segment is
+     * within the half swath width of its flight line, and within half the sample spacing of its centre along the line.
+     * Another half sample spacing is left for the rounding errors.
+     *
+     * @param halfSwathWidth
+     * @param sampleSpacing
+     * @return
+     */
+    public static double halo(double halfSwathWidth, double sampleSpacing) {
+        return halfSwathWidth + sampleSpacing;
+    }
+
+    /**
+     * Split the samples into tiles, each tile holding the samples of its halo as well, encoded into blocks.
+     *
+     * @param samples
+     * @param tiling
+     * @param partitions
+     * @return blocks of every tile
+     */
+    public static JavaPairRDD<Long, List<PointBlock>> tile(JavaRDD<ImmutableBasePoint> samples, final Tiling tiling,
+                                                           int partitions) {
+        return samples
+                .flatMapToPair(new PairFlatMapFunction<ImmutableBasePoint, Long, ImmutableBasePoint>() {
+                    private static final long serialVersionUID = 6532802806187406455L;
+
+                    @Override
+                    public Iterator<Tuple2<Long, ImmutableBasePoint>> call(ImmutableBasePoint sample) {
+                        final long[] tiles = tiling.tilesWithin(sample.x(), sample.y());
+                        final List<Tuple2<Long, ImmutableBasePoint>> pairs = new ArrayList(tiles.length);
+                        for (long tile : tiles) {
+                            pairs.add(new Tuple2(tile, sample));
+                        }
+                        return pairs.iterator();
+                    }
+                })
+                .aggregateByKey(
+                        new SwathSegmentPoints(),
+                        partitions,
+                        new Function2<SwathSegmentPoints, ImmutableBasePoint, SwathSegmentPoints>() {
+                            @Override
+                            public SwathSegmentPoints call(SwathSegmentPoints points, ImmutableBasePoint point) {
+                                points.add(point);
+                                return points;
+                            }
+                        },
+                        new Function2<SwathSegmentPoints, SwathSegmentPoints, SwathSegmentPoints>() {
+                            @Override
+                            public SwathSegmentPoints call(SwathSegmentPoints p1, SwathSegmentPoints p2) {
+                                p1.addAll(p2);
+                                return p1;
+                            }
+                        }
+                )
+                .mapValues(new Function<SwathSegmentPoints, List<PointBlock>>() {
+                    private static final long serialVersionUID = -2719622283790871683L;
+
+                    @Override
+                    public List<PointBlock> call(SwathSegmentPoints points) {
+                        return PointBlock.encode(points, PointBlock.MILLIMETRE);
+                    }
+                });
+    }
+
+    @Override
+    public Iterator<int[]> call(Iterator<Tuple2<Long, List<PointBlock>>> tiles) {
+        final PulseCounter[] pulseCounters = new PulseCounter[transformations.length];
+        for (int grid = 0; grid < transformations.length; grid++) {
+            pulseCounters[grid] = new PulseCounter(
+                    lineSpacing, sampleSpacing, altitude, angularResolution, minAngle, maxAngle, uniqueVPerU,
+                    memo, transformations[grid]
+            );
+        }
+        final Slice slice = new Slice();
+        final int[] numberOfPulses = new int[2 * transformations.length];
+
+        // rotations of the current tile, whether cached by the executor or not
+        final Map<Double, RotatedTile> rotations = new HashMap();
+
+        while (tiles.hasNext()) {
+            final Tuple2<Long, List<PointBlock>> tile = tiles.next();
+            rotations.clear();
+
+            for (int grid = 0; grid < transformations.length; grid++) {
+                final RigidTransform2D transformation = transformations[grid];
+                final Boolean flyingDirection = flyingDirections[grid];
+
+                RotatedTile rotated = rotations.get(transformation.angle());
+                if (rotated == null && cacheBudget > 0) {
+                    rotated = RotatedTileCache.get(cloud, tile._1(), transformation.angle());
+                }
+                if (rotated == null) {
+                    rotated = RotatedTile.of(
+                            tile._2(), transformation, heightFloor == null ? null : heightFloor.getValue()
+                    );
+                    if (cacheBudget > 0) {
+                        RotatedTileCache.put(cloud, tile._1(), transformation.angle(), rotated, cacheBudget);
+                    }
+                }
+                rotations.put(transformation.angle(), rotated);
+
+                slice.grid(transformation, pulseCounters[grid]);
+                if (flyingDirection == null || flyingDirection) {
+                    numberOfPulses[2 * grid] += evaluate(tile._1(), rotated, true, slice);
+                }
+                if (flyingDirection == null || !flyingDirection) {
+                    numberOfPulses[2 * grid + 1] += evaluate(tile._1(), rotated, false, slice);
+                }
+            }
+        }
+
+        return Collections.singletonList(numberOfPulses).iterator();
+    }
+
+    /**
+     * Count the interpolated pulses of the swath segments centred in a tile, in one flying direction of the flight grid
+     * of the slice.
+     *
+     * @param tile
+     * @param rotated points of the tile
+     * @param flyingDirection
+     * @param slice
+     * @return
+     */
+    private int evaluate(long tile, RotatedTile rotated, boolean flyingDirection, Slice slice) {
+        // sample slices are contiguous along the lines, that is across the anchors
+        final int[] order = flyingDirection ? rotated.byY() : rotated.byX();
+        final double[] rx = rotated.x(), ry = rotated.y(), z = rotated.z(), zFloor = rotated.zFloor();
+        final double tx = slice.transformation.tx(), ty = slice.transformation.ty();
+
+        int numberOfPulses = 0;
+        slice.start(tile, flyingDirection, 0);
+        for (int k = 0; k < rotated.size(); k++) {
+            final int i = order[k];
+            final double x = rx[i] + tx;
+            final double y = ry[i] + ty;
+            final double anchor = flyingDirection ? x : y;
+            final double coordinate = flyingDirection ? y : x;
+
+            final long sampleIdx = Math.round(coordinate / sampleSpacing);
+            if (k == 0 || sampleIdx != slice.sampleIdx) {
+                numberOfPulses += slice.flush();
+                slice.start(tile, flyingDirection, sampleIdx);
+            }
+
+            final long closestLineIdx = Math.round(anchor / lineSpacing);
+            final double closestLine = closestLineIdx * lineSpacing;
+            final long firstLineIdx = closestLineIdx
+                    - SwathAssignment.coveringLines(anchor, closestLine, lineSpacing, halfSwathWidth, true) + 1;
+            final long lastLineIdx = closestLineIdx
+                    + SwathAssignment.coveringLines(anchor, closestLine, lineSpacing, halfSwathWidth, false);
+            for (long lineIdx = firstLineIdx; lineIdx <= lastLineIdx; lineIdx++) {
+                final double lineAnchor = SwathAssignment.lineAnchor(closestLine, closestLineIdx, lineIdx, lineSpacing);
+                if (fieldOfView == null || fieldOfView.mayReach(anchor - lineAnchor, zFloor[i])) {
+                    slice.add(lineIdx, x, y, z[i]);
+                }
+            }
+        }
+        return numberOfPulses + slice.flush();
+    }
+
+    /**
+     * Swath segments of a sample slice of a flight grid, centred in a tile.
+     */
+    private final class Slice {
+        private final Map<Long, SwathSegmentPoints> swathSegments = new HashMap();
+        private final Deque<SwathSegmentPoints> pool = new ArrayDeque();
+        private int memoisedPulses = 0;
+
+        private RigidTransform2D transformation;
+        private PulseCounter pulseCounter;
+        private long tile;
+        private boolean flyingDirection;
+        private long sampleIdx;
+
+        void grid(RigidTransform2D transformation, PulseCounter pulseCounter) {
+            this.transformation = transformation;
+            this.pulseCounter = pulseCounter;
+        }
+
+        void start(long tile, boolean flyingDirection, long sampleIdx) {
+            this.tile = tile;
+            this.flyingDirection = flyingDirection;
+            this.sampleIdx = sampleIdx;
+        }
+
+        void add(long lineIdx, double x, double y, double z) {
+            SwathSegmentPoints points = swathSegments.get(lineIdx);
+            if (points == null) {
+                final long key = ImmutableSwathSegment.key(flyingDirection, lineIdx, sampleIdx);
+                if (!isCentredIn(key, tile, transformation)) {
+                    points = NOT_EVALUATED;
+                } else {
+                    final int memoised = pulseCounter.memoised(key);
+                    if (memoised >= 0) {
+                        // no need to gather the points
+                        memoisedPulses += memoised;
+                        points = MEMOISED;
+                    } else {
+                        points = pool.isEmpty() ? new SwathSegmentPoints() : pool.pop();
+                    }
+                }
+                swathSegments.put(lineIdx, points);
+            }
+            if (points != NOT_EVALUATED && points != MEMOISED) {
+                points.add(x, y, z);
+            }
+        }
+
+        /**
+         * Count the interpolated pulses of the swath segments of the slice, and empty it.
+         *
+         * @return
+         */
+        int flush() {
+            int numberOfPulses = memoisedPulses;
+            for (Map.Entry<Long, SwathSegmentPoints> swathSegment : swathSegments.entrySet()) {
+                final SwathSegmentPoints points = swathSegment.getValue();
+                if (points != NOT_EVALUATED && points != MEMOISED) {
+                    numberOfPulses += pulseCounter.count(
+                            ImmutableSwathSegment.key(flyingDirection, swathSegment.getKey(), sampleIdx), points
+                    );
+                    points.clear();
+                    pool.push(points);
+                }
+            }
+            swathSegments.clear();
+            memoisedPulses = 0;
+            return numberOfPulses;
+        }
+    }
+
+    private boolean isCentredIn(long swathSegment, long tile, RigidTransform2D transformation) {
+        final ImmutableSwathSegment centre = ImmutableSwathSegment.valueOf(swathSegment, lineSpacing, sampleSpacing, altitude);
+        return tiling.tile(
+                transformation.inverseX(centre.x(), centre.y()),
+                transformation.inverseY(centre.x(), centre.y())
+        ) == tile;
+    }
+}
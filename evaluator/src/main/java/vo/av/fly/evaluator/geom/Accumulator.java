@@ -1,6 +1,7 @@
 package vo.av.fly.evaluator.geom;
 
 import org.apache.log4j.Logger;
+import org.locationtech.jts.algorithm.CGAlgorithmsDD;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineSegment;
@@ -15,10 +16,13 @@ import java.util.*;
 public class Accumulator {
     static Logger LOGGER = Logger.getLogger(Accumulator.class);
 
-    private final double[] aircraftPos; // in uv
+    private double[] aircraftPos; // in uv
     private final GeometryFactory geomFactory;
-    private final double[] minRange;
-    private final int[] pointCount;
+    private final AngularBins bins;
+    private final int noAngularValues;
+    private AngularKeepers keepers; // minRange, pointCount
+    private final SparseAngularKeepers sparseKeepers;
+    private DenseAngularKeepers denseKeepers; // allocated once the sparse keepers fill up
 
     private final boolean uniqueVperU;
 
@@ -26,11 +30,53 @@ public class Accumulator {
 
     int actualMinAglIdx = Integer.MAX_VALUE, actualMaxAglIdx = -Integer.MAX_VALUE;
 
+    // the keepers switch from sparse to dense once more than 1/SPARSE_MAX_FILL of the bins are non-empty
+    final static int SPARSE_MAX_FILL = 8;
+
+    private final int firstPositiveAglIdx; // first bin with a positive angle, where the vertical search changes flank
+
     final double MIN_SMEARING_ANGLE = 10;
+    final static double PULSE_LENGTH = 1000; // of the pulses intersected with known lines
+
+    private final double[] intersection = new double[2]; // reused by interpolate
+
+    // points binned ahead of feeding them to the keepers, see addBatchToKeepers(int)
+    private int[] batchAngularIdx = new int[0];
+    private double[] batchRange = new double[0];
+    private byte[] batchFeeds = new byte[0]; // times each point is fed to the keepers
+
+    // gaps of at least this many bins are counted analytically, testing this many bins next to each piece boundary
+    final static int ANALYTIC_GAP_MIN_BINS = 16;
+    final static int ANALYTIC_GAP_MARGIN = 2;
     //final static double MIN_SLOPE = 60;
     //final static int MIN_INTERPOLATED_POINTS = 0;
 
-    final private TreeSet<Point> uvPointData;
+    /**
+     * Storage of the uv points of the swath segment.
+     */
+    public enum Storage {
+        /**
+         * {@code TreeSet<Point>} ordered by {@link UComparator}
+         */
+        TREE_SET,
+        /**
+         * Parallel primitive arrays sorted by u, see {@link SortedUVPoints}
+         */
+        SORTED_ARRAY
+    }
+
+    private final Storage storage;
+
+    final private TreeSet<Point> uvPointData; // TREE_SET storage
+    final private SortedUVPoints uvPoints; // SORTED_ARRAY storage
+    private RangeExtremumIndex vIndex; // SORTED_ARRAY storage, built on demand once the points are final
+    private boolean vIndexBuilt = false;
+
+    final static double VERTICAL_SEARCH_RADIUS = 1.5; //TODO avoid hard code
+    final static double UNIQUENESS_U_RESOLUTION = .5; // width of the u bins resolving layered points
+
+    // candidates of the > 1 elevation step are pre-selected by the index with this slack, then tested exactly
+    private static final double ELEVATION_STEP_SLACK = 1e-6;
 
     /**
      *
@@ -42,25 +88,71 @@ public class Accumulator {
      * @param geomFactory
      */
     public Accumulator(double minAngle, double maxAngle, double resolution, double[] aircraftPos, boolean uniqueVperU, GeometryFactory geomFactory) {
+        this(minAngle, maxAngle, resolution, aircraftPos, uniqueVperU, geomFactory, Storage.SORTED_ARRAY);
+    }
+
+    /**
+     *
+     * @param minAngle
+     * @param maxAngle
+     * @param resolution
+     * @param aircraftPos
+     * @param uniqueVperU
+     * @param geomFactory
+     * @param storage storage of the uv points
+     */
+    public Accumulator(double minAngle, double maxAngle, double resolution, double[] aircraftPos, boolean uniqueVperU, GeometryFactory geomFactory, Storage storage) {
         this.minAngle = minAngle;
         this.maxAngle = maxAngle;
         this.resolution = resolution;
         this.aircraftPos = aircraftPos;
         this.geomFactory = geomFactory;
+        this.bins = AngularBins.of(minAngle, maxAngle, resolution);
 
         this.uniqueVperU = uniqueVperU;
 
-        int noAngularValues = (int) Math.round(Math.ceil((maxAngle - minAngle) / resolution));
+        noAngularValues = (int) Math.round(Math.ceil((maxAngle - minAngle) / resolution));
 
-        minRange = new double[noAngularValues];
-        pointCount = new int[noAngularValues];
+        sparseKeepers = new SparseAngularKeepers();
+        keepers = sparseKeepers;
 
-        for (int i = 0; i < minRange.length; i++) {
-            minRange[i] = Double.NaN;
-            pointCount[i] = 0;
+        int idx = 0;
+        while (idx < noAngularValues && !(idx2Angle(idx) > 0)) {
+            idx++;
+        }
+        firstPositiveAglIdx = idx;
+
+        this.storage = storage;
+        if (storage == Storage.TREE_SET) {
+            uvPointData = new TreeSet(new UComparator());
+            uvPoints = null;
+        } else {
+            uvPointData = null;
+            uvPoints = new SortedUVPoints();
         }
+    }
 
-        uvPointData = new TreeSet(new UComparator());
+    /**
+     * Reset the accumulator for another swath segment with the same angular parameters, keeping the allocated storage.
+     * Only the bins written since the last reset are cleaned up, and the keepers start sparse again.
+     *
+     * @param aircraftPos in uv
+     */
+    public void reset(double[] aircraftPos) {
+        this.aircraftPos = aircraftPos;
+
+        keepers.clear();
+        keepers = sparseKeepers;
+        keepers.clear();
+        actualMinAglIdx = Integer.MAX_VALUE;
+        actualMaxAglIdx = -Integer.MAX_VALUE;
+
+        if (storage == Storage.TREE_SET) {
+            uvPointData.clear();
+        } else {
+            uvPoints.clear();
+            vIndexBuilt = false;
+        }
     }
 
     /**
@@ -90,36 +182,98 @@ public class Accumulator {
      * @return
      */
     public boolean add(double[] uv) {
-        uvPointData.add(geomFactory.createPoint(new Coordinate(uv[0], uv[1])));
+        return add(uv[0], uv[1]);
+    }
+
+    /**
+     * Add a point to the accumulator.
+     *
+     * @param u
+     * @param v
+     * @return
+     */
+    public boolean add(double u, double v) {
+        if (storage == Storage.TREE_SET) {
+            uvPointData.add(geomFactory.createPoint(new Coordinate(u, v)));
+        } else {
+            uvPoints.add(u, v);
+            vIndexBuilt = false;
+        }
 
         if (uniqueVperU) {// just cache the point, do not need to add the data to keepers
             return true;
         }
-        return addToKeepers(uv);
+        return addToKeepers(u, v);
+    }
+
+    /**
+     * Add a batch of points to the accumulator, same as adding them one by one.
+     * <p>
+     * The angles, ranges and angular bins of the whole batch are computed in one loop, then the bins are updated in
+     * another.
+     *
+     * @param u
+     * @param v
+     * @param n number of points, from the start of {@code u} and {@code v}
+     */
+    public void add(double[] u, double[] v, int n) {
+        if (storage == Storage.TREE_SET) {
+            for (int i = 0; i < n; i++) {
+                uvPointData.add(geomFactory.createPoint(new Coordinate(u[i], v[i])));
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                uvPoints.add(u[i], v[i]);
+            }
+            vIndexBuilt = false;
+        }
+
+        if (uniqueVperU) {// just cache the points, do not need to add the data to keepers
+            return;
+        }
+
+        ensureBatchCapacity(n);
+        for (int i = 0; i < n; i++) {
+            bin(i, u[i], v[i]);
+            batchFeeds[i] = 1;
+        }
+        addBatchToKeepers(n);
     }
 
     /**
      * Add the UV point to keepers (minRange, pointCount).
      *
-     * @param uv
+     * @param u
+     * @param v
      * @return
      */
-    private boolean addToKeepers(double[] uv) {
-        LineSegment segment = new LineSegment(
-                aircraftPos[0], aircraftPos[1],
-                uv[0], uv[1]
-        );
+    private boolean addToKeepers(double u, double v) {
+        // same as the angle and length of the segment from the aircraft to the point
+        final double du = u - aircraftPos[0];
+        final double dv = v - aircraftPos[1];
 
-        //System.out.println(segment);
-        double angle = (segment.angle() + Math.PI / 2) * 180 / Math.PI; // in degrees
-        double range = segment.getLength();
+        double angle = (Math.atan2(dv, du) + Math.PI / 2) * 180 / Math.PI; // in degrees
+        double range = Math.sqrt(du * du + dv * dv);
 
         int angularIdx = (int) Math.round((angle - minAngle) / resolution);
 
-        if ((angularIdx > 0) && (angularIdx < minRange.length)) { // this should reject any pulses outside the field of view
-            pointCount[angularIdx]++;
-            if (Double.isNaN(minRange[angularIdx]) || minRange[angularIdx] > range) {
-                minRange[angularIdx] = range;
+        return addToKeepers(angularIdx, range);
+    }
+
+    /**
+     * Add a point to keepers given its angular bin and range.
+     *
+     * @param angularIdx
+     * @param range
+     * @return
+     */
+    private boolean addToKeepers(int angularIdx, double range) {
+        if ((angularIdx > 0) && (angularIdx < noAngularValues)) { // this should reject any pulses outside the field of view
+            final boolean newMinRange = keepers.add(angularIdx, range);
+            if (keepers == sparseKeepers && sparseKeepers.occupied() > noAngularValues / SPARSE_MAX_FILL) {
+                densify();
+            }
+            if (newMinRange) {
                 return true;
             }
 
@@ -134,12 +288,83 @@ public class Accumulator {
         return false;
     }
 
+    /**
+     * Compute the angular bin and range of a point into the batch, same as {@link #addToKeepers(double, double)}.
+     *
+     * @param i position in the batch
+     * @param u
+     * @param v
+     */
+    private void bin(int i, double u, double v) {
+        final double du = u - aircraftPos[0];
+        final double dv = v - aircraftPos[1];
+
+        final double angle = (Math.atan2(dv, du) + Math.PI / 2) * 180 / Math.PI; // in degrees
+        batchRange[i] = Math.sqrt(du * du + dv * dv);
+        batchAngularIdx[i] = (int) Math.round((angle - minAngle) / resolution);
+    }
+
+    /**
+     * Feed the first {@code n} points of the batch to the keepers, in order.
+     *
+     * @param n
+     */
+    private void addBatchToKeepers(int n) {
+        for (int i = 0; i < n; i++) {
+            for (int feed = 0; feed < batchFeeds[i]; feed++) {
+                addToKeepers(batchAngularIdx[i], batchRange[i]);
+            }
+        }
+    }
+
+    private void ensureBatchCapacity(int n) {
+        if (batchAngularIdx.length < n) {
+            final int capacity = Math.max(n, batchAngularIdx.length << 1);
+            batchAngularIdx = new int[capacity];
+            batchRange = new double[capacity];
+            batchFeeds = new byte[capacity];
+        }
+    }
+
+    /**
+     * Find the last of the empty bins following an empty bin, up to the next non-empty bin or to the change of flank of
+     * the vertical search, whichever comes first.
+     *
+     * @param angularIdx an empty bin
+     * @return
+     */
+    private int lastEmptyBin(int angularIdx) {
+        int next = keepers.nextOccupied(angularIdx + 1);
+        if (angularIdx < firstPositiveAglIdx && next > firstPositiveAglIdx) {
+            next = firstPositiveAglIdx;
+        }
+        return next - 1;
+    }
+
+    /**
+     * Move the keepers from the sparse table to arrays covering the whole field of view.
+     */
+    private void densify() {
+        if (denseKeepers == null) {
+            denseKeepers = new DenseAngularKeepers(noAngularValues);
+        }
+        sparseKeepers.copyTo(denseKeepers);
+        sparseKeepers.clear();
+        keepers = denseKeepers;
+    }
+
     /**
      * Detect and resolve points layered above the same location (points with different Vs sharing the same U value).
+     * Must run once, after the last point is added: package-private for benchmarking only.
      *
      */
-    private void ensureUniqueness() {
-        final double uResolution = .5;
+    void ensureUniqueness() {
+        if (storage == Storage.SORTED_ARRAY) {
+            ensureUniquenessSorted();
+            return;
+        }
+
+        final double uResolution = UNIQUENESS_U_RESOLUTION;
 
         Map<Integer, List<Point>> map = new HashMap();
 
@@ -194,7 +419,7 @@ public class Accumulator {
                     System.out.println(String.format("Insignificant elevation difference -> add all"));
                 }
                 for (Point point : pList) { // remove those from low point
-                    addToKeepers(new double[]{point.getX(), point.getY()});
+                    addToKeepers(point.getX(), point.getY());
                 }
             } else {
 
@@ -264,16 +489,93 @@ public class Accumulator {
 
         // add the remaining points to the keepers
         for(Point point : uvPointData){
-            addToKeepers(new double[]{point.getX(), point.getY()});
+            addToKeepers(point.getX(), point.getY());
         }
     }
 
+    /**
+     * {@link #ensureUniqueness()} on the {@code SORTED_ARRAY} storage.
+     * <p>
+     * As the points are sorted by u, the points of a u bin are contiguous, so a single sweep over the bins makes the
+     * same keep/drop decisions as the map-based binning, compacts the survivors in place and feeds them to the keepers
+     * as a batch.
+     */
+    private void ensureUniquenessSorted() {
+        final double uResolution = UNIQUENESS_U_RESOLUTION;
+
+        final int n = uvPoints.slots();
+        int kept = 0;
+        ensureBatchCapacity(n);
+
+        int binStart = 0;
+        while (binStart < n) {
+            // find the points of this u bin and their lowest/highest v
+            final int uIdx = (int) Math.round(uvPoints.u(binStart) / uResolution);
+            double lowestV = uvPoints.v(binStart), highestV = lowestV;
+            int binEnd = binStart + 1;
+            while (binEnd < n && (int) Math.round(uvPoints.u(binEnd) / uResolution) == uIdx) {
+                final double pv = uvPoints.v(binEnd);
+                if (pv < lowestV) {
+                    lowestV = pv;
+                }
+                if (pv > highestV) {
+                    highestV = pv;
+                }
+                binEnd++;
+            }
+
+            if (highestV - lowestV < 1) { // insignificant elevation difference -> keep all
+                for (int i = binStart; i < binEnd; i++) {
+                    // such points are fed to the keepers both while binning and with the remaining points
+                    batchFeeds[kept] = 2;
+                    uvPoints.set(kept++, uvPoints.u(i), uvPoints.v(i));
+                }
+            } else {
+                // partition the bin to the 2 halves base on their proximity to the highest/lowest point
+                int highCount = 0;
+                for (int i = binStart; i < binEnd; i++) {
+                    final double pv = uvPoints.v(i);
+                    if (highestV - pv < pv - lowestV) { // point is closer to the high group
+                        highCount++;
+                    }
+                }
+                final boolean highDominates = highCount > (binEnd - binStart) - highCount;
+
+                // keep the dominant group only
+                for (int i = binStart; i < binEnd; i++) {
+                    final double pu = uvPoints.u(i), pv = uvPoints.v(i);
+                    if ((highestV - pv < pv - lowestV) == highDominates) {
+                        batchFeeds[kept] = 1;
+                        uvPoints.set(kept++, pu, pv);
+                    }
+                }
+            }
+
+            binStart = binEnd;
+        }
+
+        uvPoints.truncate(kept);
+        vIndexBuilt = false;
+
+        for (int i = 0; i < kept; i++) {
+            bin(i, uvPoints.u(i), uvPoints.v(i));
+        }
+        addBatchToKeepers(kept);
+    }
+
     /**
      * Get the accumulator min range.
      *
      * @return
      */
     public double[] getMinRange() {
+        if (keepers == denseKeepers) {
+            return denseKeepers.getMinRange();
+        }
+        double[] minRange = new double[noAngularValues];
+        for (int i = 0; i < noAngularValues; i++) {
+            minRange[i] = keepers.minRange(i);
+        }
         return minRange;
     }
 
@@ -283,6 +585,13 @@ public class Accumulator {
      * @return
      */
     public int[] getPointCount() {
+        if (keepers == denseKeepers) {
+            return denseKeepers.getPointCount();
+        }
+        int[] pointCount = new int[noAngularValues];
+        for (int i = 0; i < noAngularValues; i++) {
+            pointCount[i] = keepers.pointCount(i);
+        }
         return pointCount;
     }
 
@@ -297,10 +606,10 @@ public class Accumulator {
 
         EnrichedPoint2D point = null;
         OccludedBuffer occludedBuffer = null;
-        for (int angularIdx = 0; angularIdx < minRange.length; angularIdx++) {
+        for (int angularIdx = 0; angularIdx < noAngularValues; angularIdx++) {
             final double angle = idx2Angle(angularIdx);
-            final double range = minRange[angularIdx];
-            final int count = pointCount[angularIdx];
+            final double range = keepers.minRange(angularIdx);
+            final int count = keepers.pointCount(angularIdx);
 
             if (Double.isNaN(range) && point == null) {
                 continue;
@@ -349,10 +658,10 @@ public class Accumulator {
 
         EnrichedPoint2D latestKnownPoint = null; // latest known latestKnownPoint
         OccludedBuffer occludedBuffer = null;
-        for (int angularIdx = 0; angularIdx < minRange.length; angularIdx++) {
+        for (int angularIdx = 0; angularIdx < noAngularValues; angularIdx++) {
             final double angle = idx2Angle(angularIdx); // in degrees, to the -z, originated at the aircraft position
-            final double range = minRange[angularIdx];
-            final int count = pointCount[angularIdx];
+            final double range = keepers.minRange(angularIdx);
+            final int count = keepers.pointCount(angularIdx);
 
             if (Double.isNaN(range) && latestKnownPoint == null) {
                 continue; // reach emty bin but there is not a known point for interpolation
@@ -389,8 +698,7 @@ public class Accumulator {
                 }
 
             } else { // non-empty bin
-                double[] uv = computePoint(angle, range);
-                latestKnownPoint = new EnrichedPoint2D(geomFactory.createPoint(new Coordinate(uv[0], uv[1])), count, false);
+                latestKnownPoint = new EnrichedPoint2D(geomFactory.createPoint(computeCoordinate(angularIdx, range)), count, false);
 
                 if (occludedBuffer != null) { // pending occluded buffer
                     List<EnrichedPoint2D> interpolatedPoints = occludedBuffer.finish(latestKnownPoint);
@@ -419,61 +727,269 @@ public class Accumulator {
      * @return
      */
     private List<EnrichedPoint2D> interpolate(Point latestKnownPoint, EnrichedPoint2D nextKnownPoint, int angularIdx, int nextAngularIdx) {
+        List<EnrichedPoint2D> result = new LinkedList();
+        interpolate(
+                latestKnownPoint.getX(), latestKnownPoint.getY(),
+                nextKnownPoint.getX(), nextKnownPoint.getY(),
+                angularIdx, nextAngularIdx,
+                result, nextKnownPoint.count());
+        return result;
+    }
 
-        LineSegment knownLine = new LineSegment(
-                new Coordinate(latestKnownPoint.getX(), latestKnownPoint.getY()),
-                new Coordinate(nextKnownPoint.getX(), nextKnownPoint.getY())
-        );
+    /**
+     * Interpolate vertical group, on primitives.
+     *
+     * @param k0u u of the latest known point
+     * @param k0v v of the latest known point
+     * @param k1u u of the next known point
+     * @param k1v v of the next known point
+     * @param angularIdx
+     * @param nextAngularIdx
+     * @param result interpolated points are added to this list, unless it is null
+     * @param count point count of the interpolated points
+     * @return number of interpolated points
+     */
+    private int interpolate(double k0u, double k0v, double k1u, double k1v, int angularIdx, int nextAngularIdx, List<EnrichedPoint2D> result, int count) {
+        final double knownLineAngle = Math.atan2(k1v - k0v, k1u - k0u);
 
         if (RayCasting.DEBUG) {
-            System.out.println(String.format("Known line: %s", knownLine));
+            System.out.println(String.format("Known line: LINESTRING( %s %s, %s %s)", k0u, k0v, k1u, k1v));
         }
 
-        List<EnrichedPoint2D> result = new LinkedList();
+        int interpolated = 0;
         for (int idx = angularIdx; idx <= nextAngularIdx; idx++) {
-            final double angle = idx2Angle(idx);
-            final double[] target = computePoint(angle, 1000);
-            final LineSegment pulse = new LineSegment(
-                    new Coordinate(aircraftPos[0], aircraftPos[1]),
-                    new Coordinate(target[0], target[1])
-            );
-
-            double smearingAngle = Math.abs(pulse.angle() - knownLine.angle()) * 180 / Math.PI; // in degrees
-            if (smearingAngle > 90) {
-                smearingAngle = smearingAngle - 90;
-            }
-            if (smearingAngle < MIN_SMEARING_ANGLE) {
-                if (RayCasting.DEBUG) {
-                    System.out.println(String.format("Skip smearing angle of %.1f", smearingAngle));
+            if (interpolatePulse(idx, knownLineAngle, k0u, k0v, k1u, k1v, intersection)) {
+                interpolated++;
+                if (result != null) {
+                    result.add(new EnrichedPoint2D(geomFactory.createPoint(new Coordinate(intersection[0], intersection[1])), count, true));
                 }
-                continue;
             }
+        }
 
-            if( Math.abs(90-Math.abs(pulse.angle()*180/Math.PI ) ) <  MIN_SMEARING_ANGLE) continue;
+        return interpolated;
+    }
 
-            //System.out.println(String.format("Pulse %s angle %.1f aglIdx %d", pulse, angle, idx));
-            final Point intersection
-                    = geomFactory.createPoint(pulse.intersection(knownLine));
+    /**
+     * Interpolate the pulse of an angular bin on a known line.
+     *
+     * @param idx angular bin
+     * @param knownLineAngle angle of the known line, in radians
+     * @param k0u
+     * @param k0v
+     * @param k1u
+     * @param k1v
+     * @param uv output, the interpolated point
+     * @return true if the pulse is interpolated
+     */
+    private boolean interpolatePulse(int idx, double knownLineAngle, double k0u, double k0v, double k1u, double k1v, double[] uv) {
+        final double pulseAngle = bins.pulseAngle(idx);
 
+        double smearingAngle = Math.abs(pulseAngle - knownLineAngle) * 180 / Math.PI; // in degrees
+        if (smearingAngle > 90) {
+            smearingAngle = smearingAngle - 90;
+        }
+        if (smearingAngle < MIN_SMEARING_ANGLE) {
             if (RayCasting.DEBUG) {
-                System.out.println(String.format("Interpolated point %s", intersection == null ? "null" : intersection));
+                System.out.println(String.format("Skip smearing angle of %.1f", smearingAngle));
             }
+            return false;
+        }
+
+        if( Math.abs(90-Math.abs(pulseAngle*180/Math.PI ) ) <  MIN_SMEARING_ANGLE) return false;
 
-            //if (VisibilityComputation.DEBUG) {
-            //if (intersection == null) {
-            //    System.out.println(String.format("Null pulse %s", pulse));
-            //} else {
-            //    System.out.println(String.format("Add intersection %s", intersection));
-            //}
-            //}
-            if (intersection != null && !intersection.isEmpty()) {
-                result.add(new EnrichedPoint2D(intersection, nextKnownPoint.count(), true));
+        final boolean intersects = intersectPulse(idx, k0u, k0v, k1u, k1v, uv);
+
+        if (RayCasting.DEBUG) {
+            System.out.println(String.format("Interpolated point %s", intersects ? String.format("POINT (%s %s)", uv[0], uv[1]) : "null"));
+        }
+
+        return intersects;
+    }
+
+    /**
+     * Count the pulses interpolated on a known line, i.e.
+     * {@code interpolate(k0u, k0v, k1u, k1v, angularIdx, nextAngularIdx, null, 0)}, in O(1) for long gaps.
+     * <p>
+     * Along the gap, the pulse angle increases monotonically, so whether a pulse is interpolated can only change
+     * where the pulse crosses the end points of the known line (intersection), the smearing angle crosses 10, 90 or
+     * 100 degrees, or the scan angle crosses +/-10 degrees (near-horizontal pulses). Between these angles, the bins
+     * form pieces with the same outcome: the bins next to the piece boundaries are tested individually and the
+     * interior of each piece takes the outcome of its middle bin.
+     *
+     * @param k0u
+     * @param k0v
+     * @param k1u
+     * @param k1v
+     * @param angularIdx
+     * @param nextAngularIdx
+     * @return number of interpolated pulses
+     */
+    private int countInterpolated(double k0u, double k0v, double k1u, double k1v, int angularIdx, int nextAngularIdx) {
+        if (nextAngularIdx - angularIdx < ANALYTIC_GAP_MIN_BINS
+                || distanceToAircraft(k0u, k0v) > PULSE_LENGTH * .99
+                || distanceToAircraft(k1u, k1v) > PULSE_LENGTH * .99
+                || RayCasting.DEBUG) {
+            return interpolate(k0u, k0v, k1u, k1v, angularIdx, nextAngularIdx, null, 0);
+        }
+
+        final double knownLineAngle = Math.atan2(k1v - k0v, k1u - k0u);
+        final double knownLineDegrees = knownLineAngle * 180 / Math.PI;
+
+        // scan angles (to the -v axis, in degrees) where the outcome may change; pulse angle = scan angle - 90
+        final double[] boundaries = new double[]{
+                Math.atan2(k0u - aircraftPos[0], aircraftPos[1] - k0v) * 180 / Math.PI,
+                Math.atan2(k1u - aircraftPos[0], aircraftPos[1] - k1v) * 180 / Math.PI,
+                knownLineDegrees + 90 - MIN_SMEARING_ANGLE,
+                knownLineDegrees + 90 + MIN_SMEARING_ANGLE,
+                knownLineDegrees + 90 - 90,
+                knownLineDegrees + 90 + 90,
+                knownLineDegrees + 90 - 90 - MIN_SMEARING_ANGLE,
+                knownLineDegrees + 90 + 90 + MIN_SMEARING_ANGLE,
+                -MIN_SMEARING_ANGLE,
+                MIN_SMEARING_ANGLE
+        };
+
+        // first bins of the pieces
+        final int end = nextAngularIdx + 1;
+        final int[] starts = new int[boundaries.length + 1];
+        int noStarts = 0;
+        starts[noStarts++] = angularIdx;
+        for (double boundary : boundaries) {
+            final double firstIdx = Math.ceil((boundary - minAngle) / resolution - .5); // first bin centre >= boundary
+            if (firstIdx > angularIdx && firstIdx < end) {
+                starts[noStarts++] = (int) firstIdx;
+            }
+        }
+        Arrays.sort(starts, 0, noStarts);
+
+        int result = 0;
+        for (int i = 0; i < noStarts; i++) {
+            final int pieceFrom = starts[i];
+            final int pieceTo = i + 1 < noStarts ? starts[i + 1] : end;
+            if (pieceTo - pieceFrom <= 2 * ANALYTIC_GAP_MARGIN + 1) {
+                for (int idx = pieceFrom; idx < pieceTo; idx++) {
+                    if (interpolatePulse(idx, knownLineAngle, k0u, k0v, k1u, k1v, intersection)) {
+                        result++;
+                    }
+                }
+            } else {
+                for (int k = 0; k < ANALYTIC_GAP_MARGIN; k++) {
+                    if (interpolatePulse(pieceFrom + k, knownLineAngle, k0u, k0v, k1u, k1v, intersection)) {
+                        result++;
+                    }
+                    if (interpolatePulse(pieceTo - 1 - k, knownLineAngle, k0u, k0v, k1u, k1v, intersection)) {
+                        result++;
+                    }
+                }
+                if (interpolatePulse((pieceFrom + pieceTo) >>> 1, knownLineAngle, k0u, k0v, k1u, k1v, intersection)) {
+                    result += pieceTo - pieceFrom - 2 * ANALYTIC_GAP_MARGIN;
+                }
             }
         }
 
         return result;
     }
 
+    private double distanceToAircraft(double u, double v) {
+        final double du = u - aircraftPos[0];
+        final double dv = v - aircraftPos[1];
+        return Math.sqrt(du * du + dv * dv);
+    }
+
+    /**
+     * Intersect the pulse of an angular bin, i.e. the 1000 m segment from the aircraft along the bin centre angle,
+     * with a known line. Same outcome as {@code LineSegment.intersection} (the robust orientation predicate decides
+     * whether the segments intersect), without building the segments.
+     *
+     * @param angularIdx
+     * @param q1u
+     * @param q1v
+     * @param q2u
+     * @param q2v
+     * @param uv output, the intersection point
+     * @return true if the pulse intersects the known line
+     */
+    private boolean intersectPulse(int angularIdx, double q1u, double q1v, double q2u, double q2v, double[] uv) {
+        final double p1u = aircraftPos[0], p1v = aircraftPos[1];
+        final double p2u = p1u + PULSE_LENGTH * bins.sin(angularIdx);
+        final double p2v = p1v - PULSE_LENGTH * bins.cos(angularIdx);
+
+        // envelopes
+        if (Math.min(p1u, p2u) > Math.max(q1u, q2u) || Math.max(p1u, p2u) < Math.min(q1u, q2u)
+                || Math.min(p1v, p2v) > Math.max(q1v, q2v) || Math.max(p1v, p2v) < Math.min(q1v, q2v)) {
+            return false;
+        }
+
+        final int pq1 = CGAlgorithmsDD.orientationIndex(p1u, p1v, p2u, p2v, q1u, q1v);
+        final int pq2 = CGAlgorithmsDD.orientationIndex(p1u, p1v, p2u, p2v, q2u, q2v);
+        if ((pq1 > 0 && pq2 > 0) || (pq1 < 0 && pq2 < 0)) {
+            return false;
+        }
+        final int qp1 = CGAlgorithmsDD.orientationIndex(q1u, q1v, q2u, q2v, p1u, p1v);
+        final int qp2 = CGAlgorithmsDD.orientationIndex(q1u, q1v, q2u, q2v, p2u, p2v);
+        if ((qp1 > 0 && qp2 > 0) || (qp1 < 0 && qp2 < 0)) {
+            return false;
+        }
+
+        if (pq1 == 0 && pq2 == 0 && qp1 == 0 && qp2 == 0) { // collinear
+            final boolean q1InP = inEnvelope(p1u, p1v, p2u, p2v, q1u, q1v);
+            final boolean q2InP = inEnvelope(p1u, p1v, p2u, p2v, q2u, q2v);
+            final boolean p1InQ = inEnvelope(q1u, q1v, q2u, q2v, p1u, p1v);
+            final boolean p2InQ = inEnvelope(q1u, q1v, q2u, q2v, p2u, p2v);
+            if (q1InP && q2InP) {
+                uv[0] = q1u;
+                uv[1] = q1v;
+            } else if (p1InQ && p2InQ) {
+                uv[0] = p1u;
+                uv[1] = p1v;
+            } else if (q1InP && (p1InQ || p2InQ)) {
+                uv[0] = q1u;
+                uv[1] = q1v;
+            } else if (q2InP && (p1InQ || p2InQ)) {
+                uv[0] = q2u;
+                uv[1] = q2v;
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        if (pq1 == 0 || pq2 == 0 || qp1 == 0 || qp2 == 0) { // touching at an end point
+            if ((p1u == q1u && p1v == q1v) || (p1u == q2u && p1v == q2v) || (pq1 != 0 && pq2 != 0 && qp1 == 0)) {
+                uv[0] = p1u;
+                uv[1] = p1v;
+            } else if ((p2u == q1u && p2v == q1v) || (p2u == q2u && p2v == q2v) || (pq1 != 0 && pq2 != 0)) {
+                uv[0] = p2u;
+                uv[1] = p2v;
+            } else if (pq1 == 0) {
+                uv[0] = q1u;
+                uv[1] = q1v;
+            } else {
+                uv[0] = q2u;
+                uv[1] = q2v;
+            }
+            return true;
+        }
+
+        // proper intersection, parameterised along the (short) known line
+        final double du = p2u - p1u, dv = p2v - p1v;
+        final double eu = q2u - q1u, ev = q2v - q1v;
+        double s = ((q1u - p1u) * dv - (q1v - p1v) * du) / (du * ev - dv * eu);
+        if (s < 0) {
+            s = 0;
+        } else if (s > 1) {
+            s = 1;
+        }
+        uv[0] = q1u + s * eu;
+        uv[1] = q1v + s * ev;
+        return true;
+    }
+
+    private static boolean inEnvelope(double p1u, double p1v, double p2u, double p2v, double qu, double qv) {
+        return qu >= Math.min(p1u, p2u) && qu <= Math.max(p1u, p2u)
+                && qv >= Math.min(p1v, p2v) && qv <= Math.max(p1v, p2v);
+    }
+
     /**
      *
      * @param latestKnownPoint
@@ -481,6 +997,10 @@ public class Accumulator {
      * @return
      */
     private EnrichedPoint2D searchVerticallyForNextKnownPoint(Point latestKnownPoint, boolean flank) {
+        if (storage == Storage.SORTED_ARRAY) {
+            return searchVerticallyForNextKnownPointSorted(latestKnownPoint, flank);
+        }
+
         final double d = 1.5; //TODO avoid hard code
 
         final Point fromPoint = geomFactory.createPoint(new Coordinate(latestKnownPoint.getX() - d, Double.NaN));
@@ -534,8 +1054,146 @@ public class Accumulator {
         return null;
     }
 
+    /**
+     * {@link #searchVerticallyForNextKnownPoint(Point, boolean)} on the {@code SORTED_ARRAY} storage.
+     * <p>
+     * The linear scan keeps the highest (right flank) or lowest (left flank) point seen so far, replacing it by a
+     * later point that is higher (lower) by more than 1, or higher (lower) and horizontally closer to
+     * {@code latestKnownPoint}. Instead of scanning, each replacement is located directly with the
+     * {@link RangeExtremumIndex}: the horizontally closer points form a contiguous index range of the u-sorted points.
+     *
+     * @param latestKnownPoint
+     * @param flank true - right flank; false - left flank
+     * @return
+     */
+    private EnrichedPoint2D searchVerticallyForNextKnownPointSorted(Point latestKnownPoint, boolean flank) {
+        final int result = searchVerticallyForNextKnownIndex(latestKnownPoint.getX(), latestKnownPoint.getY(), flank);
+        if (result < 0) {
+            return null;
+        }
+
+        final double knownU = latestKnownPoint.getX();
+        return new EnrichedPoint2D(
+                geomFactory.createPoint(new Coordinate(uvPoints.u(result), uvPoints.v(result))),
+                uvPoints.count(uvPoints.lowerBound(knownU - VERTICAL_SEARCH_RADIUS), uvPoints.lowerBound(knownU + VERTICAL_SEARCH_RADIUS)),
+                false);
+    }
+
+    /**
+     * Primitive form of {@link #searchVerticallyForNextKnownPointSorted(Point, boolean)}.
+     *
+     * @param knownU u of the latest known point
+     * @param knownV v of the latest known point
+     * @param flank true - right flank; false - left flank
+     * @return index of the next known point in {@link #uvPoints}, or -1 if there is none
+     */
+    private int searchVerticallyForNextKnownIndex(double knownU, double knownV, boolean flank) {
+        final double d = VERTICAL_SEARCH_RADIUS;
+
+        if (!vIndexBuilt) {
+            if (vIndex == null) {
+                vIndex = new RangeExtremumIndex(uvPoints);
+            } else {
+                vIndex.build(uvPoints);
+            }
+            vIndexBuilt = true;
+        }
+
+        // neighbours residing within a radius of d from the latest known point
+        final int from = uvPoints.lowerBound(knownU - d);
+        final int to = uvPoints.lowerBound(knownU + d);
+
+        if (from >= to) {
+            return -1;
+        }
+
+        int result = from; // the first neighbour is always taken
+        while (true) {
+            final double resultU = uvPoints.u(result), resultV = uvPoints.v(result);
+            final double resultDx = Math.abs(resultU - knownU);
+
+            // next neighbour that is higher (lower) and horizontally closer
+            final int closerFrom = firstNotFarLeft(result + 1, to, knownU, resultDx);
+            final int closerTo = firstFarRight(closerFrom, to, knownU, resultDx);
+            final int closer = flank
+                    ? vIndex.firstAbove(closerFrom, closerTo, resultV)
+                    : vIndex.firstBelow(closerFrom, closerTo, resultV);
+
+            // next neighbour that is higher (lower) by more than 1, before the closer one
+            final int stepTo = closer >= 0 ? closer : to;
+            int step = -1;
+            int i = result + 1;
+            while (i < stepTo) {
+                i = flank
+                        ? vIndex.firstAbove(i, stepTo, resultV + 1 - ELEVATION_STEP_SLACK)
+                        : vIndex.firstBelow(i, stepTo, resultV - 1 + ELEVATION_STEP_SLACK);
+                if (i < 0) {
+                    break;
+                }
+                if (Math.abs(uvPoints.v(i) - resultV) > 1) { // exact test of the linear scan
+                    step = i;
+                    break;
+                }
+                i++;
+            }
+
+            final int next = step >= 0 ? step : closer;
+            if (next < 0) {
+                break;
+            }
+            result = next;
+        }
+
+        if (Math.abs(knownV - uvPoints.v(result)) > 1) {
+            return result;
+        }
+        return -1;
+    }
+
+    /**
+     * First index in {@code [from, to)} which is not left of {@code knownU} by {@code dx} or more.
+     */
+    private int firstNotFarLeft(int from, int to, double knownU, double dx) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final double pu = uvPoints.u(mid);
+            if (pu < knownU && !(Math.abs(pu - knownU) < dx)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * First index in {@code [from, to)} which is right of {@code knownU} by {@code dx} or more.
+     */
+    private int firstFarRight(int from, int to, double knownU, double dx) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final double pu = uvPoints.u(mid);
+            if (pu > knownU && !(Math.abs(pu - knownU) < dx)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
     private void printUV() {
         System.out.print("--------------------\nPrinting UV point data\n--------------------\n");
+        if (storage == Storage.SORTED_ARRAY) {
+            for (int i = 0; i < uvPoints.slots(); i++) {
+                if (uvPoints.alive(i)) {
+                    System.out.printf("%.3f %.3f\n", uvPoints.u(i), uvPoints.v(i));
+                }
+            }
+            return;
+        }
         for (Point uv : uvPointData) {
             System.out.printf("%.3f %.3f\n", uv.getX(), uv.getY());
         }
@@ -561,8 +1219,8 @@ public class Accumulator {
         EnrichedPoint2D latestKnownPoint = null; // latest known point
         for (int angularIdx = actualMinAglIdx; angularIdx <= actualMaxAglIdx; angularIdx++) {
             final double angle = idx2Angle(angularIdx); // in degrees, to the -z, originated at the aircraft position
-            final double range = minRange[angularIdx];
-            final int count = pointCount[angularIdx];
+            final double range = keepers.minRange(angularIdx);
+            final int count = keepers.pointCount(angularIdx);
 
             if (Double.isNaN(range) && latestKnownPoint == null) {
                 continue; // reach empty bin but there is not a known point for interpolation
@@ -621,12 +1279,82 @@ public class Accumulator {
 
                     if (nextAngularIdx > angularIdx) {
                         angularIdx = nextAngularIdx - 1; // skip to nextAngularIdx
+                        continue;
                     }
                 }
 
+                // the following empty bins repeat the same search and have no pulse left to interpolate
+                angularIdx = lastEmptyBin(angularIdx);
+
             } else { // non-empty bin
-                double[] uv = computePoint(angle, range);
-                latestKnownPoint = new EnrichedPoint2D(geomFactory.createPoint(new Coordinate(uv[0], uv[1])), count, false);
+                latestKnownPoint = new EnrichedPoint2D(geomFactory.createPoint(computeCoordinate(angularIdx, range)), count, false);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Count the pulses hitting vertical structures, i.e. {@code interpolateVerticalPulses().size()}, without building
+     * the pulses.
+     *
+     * @return number of interpolated pulses
+     */
+    public int countVerticalPulses() {
+        if (storage == Storage.TREE_SET) {
+            return interpolateVerticalPulses().size();
+        }
+
+        if (uniqueVperU) {
+            ensureUniqueness();
+        }
+
+        if (RayCasting.DEBUG) {
+            printUV();
+        }
+
+        int result = 0;
+
+        boolean known = false; // whether there is a latest known point
+        double knownU = Double.NaN, knownV = Double.NaN; // latest known point
+        for (int angularIdx = actualMinAglIdx; angularIdx <= actualMaxAglIdx; angularIdx++) {
+            final double range = keepers.minRange(angularIdx);
+
+            if (Double.isNaN(range) && !known) {
+                continue; // reach empty bin but there is not a known point for interpolation
+            }
+            if (Double.isNaN(range)) { // empty bin (and there is a preceeding known point)
+
+                // pritotize vertical search
+                final int next = searchVerticallyForNextKnownIndex(knownU, knownV, idx2Angle(angularIdx) > 0);
+                if (next >= 0) {
+                    final double nextU = uvPoints.u(next), nextV = uvPoints.v(next);
+
+                    double nextAngle = computeAngle(nextU, nextV);
+
+                    if (nextAngle < minAngle) {
+                        nextAngle = minAngle;
+                    } else if (nextAngle > maxAngle) {
+                        nextAngle = maxAngle;
+                    }
+
+                    int nextAngularIdx = angle2Idx(nextAngle);
+
+                    result += countInterpolated(knownU, knownV, nextU, nextV, angularIdx, nextAngularIdx);
+
+                    if (nextAngularIdx > angularIdx) {
+                        angularIdx = nextAngularIdx - 1; // skip to nextAngularIdx
+                        continue;
+                    }
+                }
+
+                // the following empty bins repeat the same search and have no pulse left to interpolate
+                angularIdx = lastEmptyBin(angularIdx);
+
+            } else { // non-empty bin
+                knownU = aircraftPos[0] + range * bins.sin(angularIdx);
+                knownV = aircraftPos[1] - range * bins.cos(angularIdx);
+                known = true;
             }
         }
 
@@ -645,8 +1373,8 @@ public class Accumulator {
         OccludedBuffer occludedBuffer = null;
         for (int angularIdx = actualMinAglIdx; angularIdx <= actualMaxAglIdx; angularIdx++) {
             final double angle = idx2Angle(angularIdx);
-            final double range = minRange[angularIdx];
-            final int count = pointCount[angularIdx];
+            final double range = keepers.minRange(angularIdx);
+            final int count = keepers.pointCount(angularIdx);
 
             if (Double.isNaN(range) && point == null) {
                 continue;
@@ -744,8 +1472,8 @@ public class Accumulator {
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < minRange.length; i++) {
-            builder.append(String.format("[%d] %.3f\n", i, minRange[i]));
+        for (int i = 0; i < noAngularValues; i++) {
+            builder.append(String.format("[%d] %.3f\n", i, keepers.minRange(i)));
         }
         return builder.toString();
     }
@@ -787,6 +1515,35 @@ public class Accumulator {
         return result;
     }
 
+    /**
+     * Compute point coordinate at the centre angle of an angular bin given range value.
+     *
+     * @param angularIdx
+     * @param range
+     * @return
+     */
+    private Coordinate computeCoordinate(int angularIdx, double range) {
+        return new Coordinate(
+                aircraftPos[0] + range * bins.sin(angularIdx),
+                aircraftPos[1] - range * bins.cos(angularIdx));
+    }
+
+    /**
+     * Compute angle from point coordinate, same as {@code computeAngleRange(uv)[0]}.
+     *
+     * @param u
+     * @param v
+     * @return angle in degrees
+     */
+    private double computeAngle(double u, double v) {
+        final double du = u - aircraftPos[0];
+        final double dv = v - aircraftPos[1];
+
+        double range = Math.sqrt(du * du + dv * dv);
+
+        return Math.asin(du / range) * 180 / Math.PI;
+    }
+
     /**
      * Compute angle and range from point coordinate.
      *
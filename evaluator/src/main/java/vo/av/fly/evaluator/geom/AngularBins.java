@@ -0,0 +1,157 @@
+package vo.av.fly.evaluator.geom;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Angular bins of a scanner's field of view, with the sine and cosine of every bin centre computed once.
+ * <p>
+ * The bins depend only on {@code (minAngle, maxAngle, resolution)}, so instances are shared by all the
+ * accumulators with the same angular parameters, see {@link #of(double, double, double)}.
+ */
+public class AngularBins {
+    private static final ConcurrentMap<Key, AngularBins> CACHE = new ConcurrentHashMap();
+
+    private final double minAngle, maxAngle, resolution;
+    private final int size;
+
+    private final double[] sin;
+    private final double[] cos;
+    private final double[] pulseAngle;
+
+    private AngularBins(double minAngle, double maxAngle, double resolution) {
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+        this.resolution = resolution;
+
+        size = (int) Math.round(Math.ceil((maxAngle - minAngle) / resolution));
+
+        sin = new double[size];
+        cos = new double[size];
+        pulseAngle = new double[size];
+        for (int i = 0; i < size; i++) {
+            sin[i] = computeSin(i);
+            cos[i] = computeCos(i);
+            pulseAngle[i] = Math.atan2(-cos[i], sin[i]);
+        }
+    }
+
+    /**
+     * Get the (shared) angular bins of the given angular parameters.
+     *
+     * @param minAngle in degrees
+     * @param maxAngle in degrees
+     * @param resolution in degrees
+     * @return
+     */
+    public static AngularBins of(double minAngle, double maxAngle, double resolution) {
+        final Key key = new Key(minAngle, maxAngle, resolution);
+        AngularBins bins = CACHE.get(key);
+        if (bins == null) {
+            bins = new AngularBins(minAngle, maxAngle, resolution);
+            AngularBins existing = CACHE.putIfAbsent(key, bins);
+            if (existing != null) {
+                bins = existing;
+            }
+        }
+        return bins;
+    }
+
+    /**
+     * @return number of bins
+     */
+    public int size() {
+        return size;
+    }
+
+    public double minAngle() {
+        return minAngle;
+    }
+
+    public double maxAngle() {
+        return maxAngle;
+    }
+
+    public double resolution() {
+        return resolution;
+    }
+
+    /**
+     * Angle of a bin centre.
+     *
+     * @param angularIdx
+     * @return in degrees, to the -v axis
+     */
+    public double angle(int angularIdx) {
+        return (angularIdx + .5) * resolution + minAngle;
+    }
+
+    /**
+     * Sine of a bin centre angle; indices outside the field of view are computed on the fly.
+     *
+     * @param angularIdx
+     * @return
+     */
+    public double sin(int angularIdx) {
+        return angularIdx >= 0 && angularIdx < size ? sin[angularIdx] : computeSin(angularIdx);
+    }
+
+    /**
+     * Cosine of a bin centre angle; indices outside the field of view are computed on the fly.
+     *
+     * @param angularIdx
+     * @return
+     */
+    public double cos(int angularIdx) {
+        return angularIdx >= 0 && angularIdx < size ? cos[angularIdx] : computeCos(angularIdx);
+    }
+
+    /**
+     * Direction of the pulse of a bin in the uv plane (i.e. the {@code LineSegment.angle()} of the pulse).
+     *
+     * @param angularIdx
+     * @return in radians
+     */
+    public double pulseAngle(int angularIdx) {
+        return angularIdx >= 0 && angularIdx < size ? pulseAngle[angularIdx] : Math.atan2(-cos(angularIdx), sin(angularIdx));
+    }
+
+    private double computeSin(int angularIdx) {
+        return Math.sin(angle(angularIdx) * Math.PI / 180);
+    }
+
+    private double computeCos(int angularIdx) {
+        return Math.cos(angle(angularIdx) * Math.PI / 180);
+    }
+
+    private static final class Key {
+        private final double minAngle, maxAngle, resolution;
+
+        Key(double minAngle, double maxAngle, double resolution) {
+            this.minAngle = minAngle;
+            this.maxAngle = maxAngle;
+            this.resolution = resolution;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return Double.compare(this.minAngle, that.minAngle) == 0
+                    && Double.compare(this.maxAngle, that.maxAngle) == 0
+                    && Double.compare(this.resolution, that.resolution) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 3;
+            hash = 53 * hash + (int) (Double.doubleToLongBits(this.minAngle) ^ (Double.doubleToLongBits(this.minAngle) >>> 32));
+            hash = 53 * hash + (int) (Double.doubleToLongBits(this.maxAngle) ^ (Double.doubleToLongBits(this.maxAngle) >>> 32));
+            hash = 53 * hash + (int) (Double.doubleToLongBits(this.resolution) ^ (Double.doubleToLongBits(this.resolution) >>> 32));
+            return hash;
+        }
+    }
+}
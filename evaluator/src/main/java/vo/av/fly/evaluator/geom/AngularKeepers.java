@@ -0,0 +1,44 @@
+package vo.av.fly.evaluator.geom;
+
+/**
+ * Per angular bin keepers of an {@link Accumulator}: the minimum range and the number of points of every bin.
+ * @author av1966
+ */
+public interface AngularKeepers {
+    /**
+     * Count a point in a bin and keep its range if it is the minimum range of the bin.
+     * @param angularIdx
+     * @param range
+     * @return true if the range is the new minimum range of the bin
+     */
+    public boolean add(int angularIdx, double range);
+
+    /**
+     * @param angularIdx
+     * @return minimum range of the bin, NaN if the bin is empty
+     */
+    public double minRange(int angularIdx);
+
+    /**
+     * @param angularIdx
+     * @return number of points of the bin
+     */
+    public int pointCount(int angularIdx);
+
+    /**
+     * Find the first bin with a minimum range from a given bin onwards.
+     * @param angularIdx
+     * @return the bin, or {@code Integer.MAX_VALUE} if there is none
+     */
+    public int nextOccupied(int angularIdx);
+
+    /**
+     * @return number of non-empty bins
+     */
+    public int occupied();
+
+    /**
+     * Empty all the bins, keeping the allocated storage.
+     */
+    public void clear();
+}
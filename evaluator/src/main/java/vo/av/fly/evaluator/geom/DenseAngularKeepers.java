@@ -0,0 +1,113 @@
+package vo.av.fly.evaluator.geom;
+
+import java.util.Arrays;
+
+/**
+ * Keepers stored in arrays covering the whole field of view.
+ * @author av1966
+ */
+public class DenseAngularKeepers implements AngularKeepers {
+    private final double[] minRange;
+    private final int[] pointCount;
+
+    private int occupied = 0;
+    private int writtenMinAglIdx = Integer.MAX_VALUE, writtenMaxAglIdx = -Integer.MAX_VALUE; // bins to clean up on clear
+
+    /**
+     * Constructor.
+     * @param noAngularValues number of bins
+     */
+    public DenseAngularKeepers(int noAngularValues) {
+        minRange = new double[noAngularValues];
+        pointCount = new int[noAngularValues];
+
+        Arrays.fill(minRange, Double.NaN);
+    }
+
+    @Override
+    public boolean add(int angularIdx, double range) {
+        if (pointCount[angularIdx]++ == 0) {
+            occupied++;
+            if (angularIdx < writtenMinAglIdx) {
+                writtenMinAglIdx = angularIdx;
+            }
+            if (angularIdx > writtenMaxAglIdx) {
+                writtenMaxAglIdx = angularIdx;
+            }
+        }
+        if (Double.isNaN(minRange[angularIdx]) || minRange[angularIdx] > range) {
+            minRange[angularIdx] = range;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the keepers of an empty bin.
+     * @param angularIdx
+     * @param range
+     * @param count
+     */
+    void set(int angularIdx, double range, int count) {
+        minRange[angularIdx] = range;
+        pointCount[angularIdx] = count;
+        occupied++;
+        if (angularIdx < writtenMinAglIdx) {
+            writtenMinAglIdx = angularIdx;
+        }
+        if (angularIdx > writtenMaxAglIdx) {
+            writtenMaxAglIdx = angularIdx;
+        }
+    }
+
+    @Override
+    public double minRange(int angularIdx) {
+        return minRange[angularIdx];
+    }
+
+    @Override
+    public int pointCount(int angularIdx) {
+        return pointCount[angularIdx];
+    }
+
+    @Override
+    public int nextOccupied(int angularIdx) {
+        final int to = Math.min(writtenMaxAglIdx + 1, minRange.length);
+        for (int idx = Math.max(angularIdx, writtenMinAglIdx); idx < to; idx++) {
+            if (!Double.isNaN(minRange[idx])) {
+                return idx;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int occupied() {
+        return occupied;
+    }
+
+    @Override
+    public void clear() {
+        if (writtenMinAglIdx <= writtenMaxAglIdx) {
+            Arrays.fill(minRange, writtenMinAglIdx, writtenMaxAglIdx + 1, Double.NaN);
+            Arrays.fill(pointCount, writtenMinAglIdx, writtenMaxAglIdx + 1, 0);
+        }
+        occupied = 0;
+        writtenMinAglIdx = Integer.MAX_VALUE;
+        writtenMaxAglIdx = -Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the minimum range of every bin
+     */
+    public double[] getMinRange() {
+        return minRange;
+    }
+
+    /**
+     * @return the point count of every bin
+     */
+    public int[] getPointCount() {
+        return pointCount;
+    }
+}
@@ -0,0 +1,81 @@
+package vo.av.fly.evaluator.geom;
+
+import java.io.Serializable;
+
+/**
+ * Scanner's field of view across a flight line, for culling the points which cannot contribute to the ray casting of
+ * a swath segment.
+ * <p>
+ * A point is in the field of view if its horizontal distance to the flight line, {@code du}, is within
+ * {@code [(altitude - z) * tan(minAngle), (altitude - z) * tan(maxAngle)]}. The {@link Accumulator} however also uses
+ * points outside the field of view when they are close (in u) to points inside: in the same u bin when resolving
+ * layered points, or around a known point in the vertical search. A point may therefore only be dropped if no point
+ * within a margin of it can be in the field of view, which is tested with the lowest point around it, see
+ * {@link HeightFloor}. The height floor must hold at least up to the margin of the lowest point of the cloud (plus the
+ * sample spacing, the extent of a swath segment along the flight line).
+ */
+public class FieldOfView implements Serializable {
+    private static final long serialVersionUID = -1709528917446962414L;
+
+    private final double altitude;
+    private final double tanMinAngle, tanMaxAngle;
+    private final double cosMaxAbsAngle;
+    private final double resolution; // in radians
+    private final boolean bounded; // false if the field of view extends above the aircraft
+
+    /**
+     * Constructor.
+     *
+     * @param altitude
+     * @param minAngle in degrees
+     * @param maxAngle in degrees
+     * @param resolution in degrees
+     */
+    public FieldOfView(double altitude, double minAngle, double maxAngle, double resolution) {
+        this.altitude = altitude;
+
+        // the last angular bin may extend beyond maxAngle
+        final int noAngularValues = (int) Math.round(Math.ceil((maxAngle - minAngle) / resolution));
+        final double lastAngle = minAngle + noAngularValues * resolution;
+
+        this.tanMinAngle = Math.tan(minAngle * Math.PI / 180);
+        this.tanMaxAngle = Math.tan(lastAngle * Math.PI / 180);
+        this.cosMaxAbsAngle = Math.cos(Math.max(Math.abs(minAngle), Math.abs(lastAngle)) * Math.PI / 180);
+        this.resolution = resolution * Math.PI / 180;
+        this.bounded = Math.max(Math.abs(minAngle), Math.abs(lastAngle)) < 90;
+    }
+
+    /**
+     * Distance in u within which a point may interact with a point in the field of view.
+     *
+     * @param zFloor lowest height around the point
+     * @return
+     */
+    public double margin(double zFloor) {
+        final double maxRange = bounded ? Math.max(altitude - zFloor, 0) / cosMaxAbsAngle : 0;
+        return Accumulator.UNIQUENESS_U_RESOLUTION
+                + Accumulator.VERTICAL_SEARCH_RADIUS
+                + maxRange * resolution; // known points are placed at the centres of the angular bins
+    }
+
+    /**
+     * Test whether a point may contribute to the ray casting of a swath segment.
+     *
+     * @param du signed horizontal distance from the flight line to the point, across the flight line
+     * @param zFloor lowest height of the points around the point, including the point
+     * @return false only if the point cannot contribute
+     */
+    public boolean mayReach(double du, double zFloor) {
+        final double depth = altitude - zFloor;
+        if (!bounded || !(depth > 0) || Double.isInfinite(depth)) {
+            return true;
+        }
+
+        final double margin = margin(zFloor);
+
+        // widest at the lowest height
+        final double from = Math.min(0, depth * tanMinAngle) - margin;
+        final double to = Math.max(0, depth * tanMaxAngle) + margin;
+        return du >= from && du <= to;
+    }
+}
@@ -0,0 +1,84 @@
+package vo.av.fly.evaluator.geom;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Lowest height of the points around any location of a point cloud, on a horizontal grid.
+ * <p>
+ * The floor of a location is the lowest height of the points in its grid cell and the 8 cells around, so it holds for
+ * all the points within a cell size of the location, whatever the orientation of the flight grid.
+ */
+public class HeightFloor implements Serializable {
+    private static final long serialVersionUID = 4120937605273652870L;
+
+    private final double cellSize;
+    private final long[] cells; // sorted
+    private final double[] floors;
+
+    private HeightFloor(double cellSize, long[] cells, double[] floors) {
+        this.cellSize = cellSize;
+        this.cells = cells;
+        this.floors = floors;
+    }
+
+    /**
+     * Build the floor from the lowest height of every non-empty cell.
+     *
+     * @param cellSize
+     * @param cells non-empty cells, see {@link #cell(double, double, double)}, sorted
+     * @param lowestZ lowest height of every cell
+     * @return
+     */
+    public static HeightFloor of(double cellSize, long[] cells, double[] lowestZ) {
+        final double[] floors = new double[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            final int ix = (int) (cells[i] >> 32);
+            final int iy = (int) cells[i];
+            double floor = Double.POSITIVE_INFINITY;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    final int j = Arrays.binarySearch(cells, cell(ix + dx, iy + dy));
+                    if (j >= 0 && lowestZ[j] < floor) {
+                        floor = lowestZ[j];
+                    }
+                }
+            }
+            floors[i] = floor;
+        }
+
+        return new HeightFloor(cellSize, cells, floors);
+    }
+
+    /**
+     * Cell of a location.
+     *
+     * @param x
+     * @param y
+     * @param cellSize
+     * @return
+     */
+    public static long cell(double x, double y, double cellSize) {
+        return cell((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize));
+    }
+
+    private static long cell(int ix, int iy) {
+        return ((long) ix << 32) | (iy & 0xFFFFFFFFL);
+    }
+
+    public double cellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Lowest height of the points within a cell size of a location.
+     *
+     * @param x
+     * @param y
+     * @return the floor, or negative infinity for a location away from the point cloud
+     */
+    public double floor(double x, double y) {
+        final int i = Arrays.binarySearch(cells, cell(x, y, cellSize));
+        return i >= 0 ? floors[i] : Double.NEGATIVE_INFINITY;
+    }
+}
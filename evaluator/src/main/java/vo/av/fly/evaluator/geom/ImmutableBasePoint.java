@@ -1,9 +1,6 @@
 package vo.av.fly.evaluator.geom;
 
-import javax.media.j3d.Transform3D;
-import javax.vecmath.Point3d;
 import java.io.Serializable;
-import java.util.List;
 
 public class ImmutableBasePoint implements Serializable  {
     private static final long serialVersionUID = 7397139002352221095L;
@@ -18,19 +15,6 @@ public class ImmutableBasePoint implements Serializable  {
         this.z = z;
     }
 
-    /**
-     * Transform the sample using a list of {@code Transform3D}.
-     * @param transformations
-     * @return
-     */
-    public ImmutableBasePoint transform(final List<SerializableTransform3D> transformations){
-        Point3d point = new Point3d(x,y,z);
-        for (Transform3D transformer : transformations) {
-            transformer.transform(point);
-        }
-        return new ImmutableBasePoint(point.x, point.y, point.z);
-    }
-
     public double x(){return x;}
     public double y(){return y;}
     public double z(){return z;}
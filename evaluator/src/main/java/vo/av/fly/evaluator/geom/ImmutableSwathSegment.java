@@ -8,6 +8,10 @@ import java.io.Serializable;
 public class ImmutableSwathSegment implements Serializable {
     private static final long serialVersionUID = -486700320344758042L;
 
+    // packed key: flying direction (1 bit) | line index (31 bits, signed) | sample index (32 bits, signed)
+    private static final int SAMPLE_BITS = 32;
+    private static final long MAX_LINE_IDX = (1L << 30) - 1;
+
     private final boolean flyingDirection;
     private final double x;
     private final double y;
@@ -69,4 +73,53 @@ public class ImmutableSwathSegment implements Serializable {
     public static ImmutableSwathSegment valueOf(boolean flyingDirection, double x, double y, double z){
         return new ImmutableSwathSegment(flyingDirection, x, y, z);
     }
+
+    /**
+     * Pack a swath segment into a key. The segment's line anchor and sample coordinate are integer multiples of the
+     * line spacing and the sample spacing, respectively.
+     *
+     * @param flyingDirection
+     * @param lineIdx line anchor / line spacing
+     * @param sampleIdx sample coordinate / sample spacing
+     * @return
+     */
+    public static long key(boolean flyingDirection, long lineIdx, long sampleIdx){
+        if (lineIdx < -MAX_LINE_IDX - 1 || lineIdx > MAX_LINE_IDX || sampleIdx != (int) sampleIdx) {
+            throw new IllegalArgumentException(String.format("Swath segment out of range: line %d, sample %d", lineIdx, sampleIdx));
+        }
+        return (flyingDirection ? Long.MIN_VALUE : 0)
+                | ((lineIdx & 0x7FFFFFFFL) << SAMPLE_BITS)
+                | (sampleIdx & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key swath segment, see {@link #key(boolean, long, long)}
+     * @return flying direction of the swath segment
+     */
+    public static boolean flyingDirection(long key){
+        return key < 0;
+    }
+
+    /**
+     * Unpack a swath segment from its key, see {@link #key(boolean, long, long)}.
+     *
+     * @param key
+     * @param lineSpacing
+     * @param sampleSpacing
+     * @param altitude
+     * @return
+     */
+    public static ImmutableSwathSegment valueOf(long key, double lineSpacing, double sampleSpacing, double altitude){
+        final boolean flyingDirection = flyingDirection(key);
+        final long lineIdx = (key << 1) >> (SAMPLE_BITS + 1); // sign-extended 31 bits
+        final long sampleIdx = (int) key;
+
+        final double lineAnchor = lineIdx * lineSpacing;
+        final double sample = sampleIdx * sampleSpacing;
+        return new ImmutableSwathSegment(
+                flyingDirection,
+                flyingDirection ? lineAnchor : sample,
+                flyingDirection ? sample : lineAnchor,
+                altitude);
+    }
 }
@@ -0,0 +1,251 @@
+package vo.av.fly.evaluator.geom;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact block of points, to cache a point cloud with a few bytes per point instead of an object per point.
+ * <p>
+ * The coordinates are quantised to a resolution, and the points are sorted along a Morton (Z-order) curve of their xy
+ * coordinates, so that consecutive points are close to each other. Every point is then stored as the differences of its
+ * quantised coordinates to those of the previous point, as zigzag varints. The points are decoded on the fly, in
+ * their Morton order.
+ * <p>
+ * The decoded points are therefore not exactly those of the input: the quantisation may move a point across the
+ * boundary of a sample slice, a flight line or a u bin. Their order does not matter, the points of every swath segment
+ * being sorted before being counted, see {@link vo.av.fly.evaluator.PulseCounter}.
+ */
+public class PointBlock implements Iterable<ImmutableBasePoint>, Serializable {
+    private static final long serialVersionUID = -6022314883012245375L;
+
+    /**
+     * Max number of points per block.
+     */
+    public static final int BLOCK_SIZE = 4096;
+    /**
+     * Millimetre resolution, for point clouds in metres.
+     */
+    public static final double MILLIMETRE = .001;
+
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private final double resolution;
+    private final int size;
+    private final byte[] data;
+
+    private PointBlock(double resolution, int size, byte[] data) {
+        this.resolution = resolution;
+        this.size = size;
+        this.data = data;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return size of the encoded points, in bytes
+     */
+    public int encodedSize() {
+        return data.length;
+    }
+
+    /**
+     * Encode points into blocks of up to {@link #BLOCK_SIZE} points. The points are sorted along the Morton curve of
+     * all of them before being split into blocks, so every block covers a compact area.
+     *
+     * @param points
+     * @param resolution quantisation step of the coordinates
+     * @return
+     * @throws IllegalArgumentException if a coordinate cannot be quantised
+     */
+    public static List<PointBlock> encode(SwathSegmentPoints points, double resolution) {
+        final int n = points.size();
+        final long[] qx = quantise(points.x(), n, resolution);
+        final long[] qy = quantise(points.y(), n, resolution);
+        final long[] qz = quantise(points.z(), n, resolution);
+
+        final int[] order = mortonOrder(qx, qy, n);
+
+        final List<PointBlock> blocks = new ArrayList();
+        final byte[] buffer = new byte[BLOCK_SIZE * 3 * MAX_VARINT_SIZE];
+        for (int from = 0; from < n; from += BLOCK_SIZE) {
+            final int to = Math.min(n, from + BLOCK_SIZE);
+            long px = 0, py = 0, pz = 0;
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                final int p = order[i];
+                length = writeVarint(buffer, length, qx[p] - px);
+                length = writeVarint(buffer, length, qy[p] - py);
+                length = writeVarint(buffer, length, qz[p] - pz);
+                px = qx[p];
+                py = qy[p];
+                pz = qz[p];
+            }
+            blocks.add(new PointBlock(resolution, to - from, Arrays.copyOf(buffer, length)));
+        }
+        return blocks;
+    }
+
+    /**
+     * Decode all the points of a sequence of blocks.
+     *
+     * @param blocks
+     * @return
+     */
+    public static Iterator<ImmutableBasePoint> points(final Iterator<PointBlock> blocks) {
+        return new Iterator<ImmutableBasePoint>() {
+            private Iterator<ImmutableBasePoint> points = null;
+
+            @Override
+            public boolean hasNext() {
+                while (points == null || !points.hasNext()) {
+                    if (!blocks.hasNext()) {
+                        return false;
+                    }
+                    points = blocks.next().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public ImmutableBasePoint next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return points.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public Iterator<ImmutableBasePoint> iterator() {
+        return new Iterator<ImmutableBasePoint>() {
+            private int i = 0;
+            private int position = 0;
+            private long x = 0, y = 0, z = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public ImmutableBasePoint next() {
+                if (i == size) {
+                    throw new NoSuchElementException();
+                }
+                x += readVarint();
+                y += readVarint();
+                z += readVarint();
+                i++;
+                return ImmutableBasePoint.valueOf(x * resolution, y * resolution, z * resolution);
+            }
+
+            private long readVarint() {
+                long v = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    v |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                return (v >>> 1) ^ -(v & 1); // zigzag
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static long[] quantise(double[] values, int n, double resolution) {
+        final long[] q = new long[n];
+        for (int i = 0; i < n; i++) {
+            final double v = Math.rint(values[i] / resolution);
+            // leave room for the differences between points
+            if (!(Math.abs(v) < (double) (1L << 61))) {
+                throw new IllegalArgumentException(String.format(
+                        "Coordinate %f cannot be quantised at resolution %f", values[i], resolution));
+            }
+            q[i] = (long) v;
+        }
+        return q;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, long value) {
+        long v = (value << 1) ^ (value >> 63); // zigzag
+        while ((v & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[position++] = (byte) v;
+        return position;
+    }
+
+    /**
+     * Order of the points along the Morton curve of their xy coordinates. The coordinates are coarsened as needed for
+     * the Morton code and the index of a point to fit in a sort key.
+     *
+     * @param qx
+     * @param qy
+     * @param n
+     * @return indices of the points, in Morton order
+     */
+    private static int[] mortonOrder(long[] qx, long[] qy, int n) {
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, qx[i]);
+            minY = Math.min(minY, qy[i]);
+            maxX = Math.max(maxX, qx[i]);
+            maxY = Math.max(maxY, qy[i]);
+        }
+
+        final int indexBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+        final int axisBits = (63 - indexBits) / 2;
+        final int rangeBits = 64 - Long.numberOfLeadingZeros(Math.max(maxX - minX, maxY - minY));
+        final int shift = Math.max(0, rangeBits - axisBits);
+
+        final long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            final long code = interleave((qx[i] - minX) >>> shift) | (interleave((qy[i] - minY) >>> shift) << 1);
+            keys[i] = (code << indexBits) | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] order = new int[n];
+        final long indexMask = (1L << indexBits) - 1;
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (keys[i] & indexMask);
+        }
+        return order;
+    }
+
+    /**
+     * @param v up to 32 bits
+     * @return bits of v spread on the even bits
+     */
+    private static long interleave(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+}
@@ -0,0 +1,116 @@
+package vo.av.fly.evaluator.geom;
+
+/**
+ * Segment tree of the highest and lowest v over the u-sorted points of a {@link SortedUVPoints}.
+ * <p>
+ * Answers "first point in an index range whose v is above/below a threshold" in O(log n), which lets the vertical
+ * search of the {@link Accumulator} jump from one candidate to the next instead of scanning the u window.
+ */
+public class RangeExtremumIndex {
+    private int n;
+    private int leaves; // power of two >= n
+    private double[] max;
+    private double[] min;
+
+    /**
+     * Build the index over the points currently held by {@code points}, which must not have removed points.
+     *
+     * @param points
+     */
+    public RangeExtremumIndex(SortedUVPoints points) {
+        build(points);
+    }
+
+    /**
+     * Rebuild the index over the points currently held by {@code points}, reusing the allocated storage if possible.
+     *
+     * @param points
+     */
+    public void build(SortedUVPoints points) {
+        n = points.slots();
+
+        int m = 1;
+        while (m < n) {
+            m <<= 1;
+        }
+        leaves = m;
+
+        if (max == null || max.length < 2 * m) {
+            max = new double[2 * m];
+            min = new double[2 * m];
+        }
+        for (int i = 0; i < m; i++) {
+            if (i < n) {
+                max[m + i] = min[m + i] = points.v(i);
+            } else {
+                max[m + i] = Double.NEGATIVE_INFINITY;
+                min[m + i] = Double.POSITIVE_INFINITY;
+            }
+        }
+        for (int node = m - 1; node > 0; node--) {
+            max[node] = max[2 * node] > max[2 * node + 1] ? max[2 * node] : max[2 * node + 1];
+            min[node] = min[2 * node] < min[2 * node + 1] ? min[2 * node] : min[2 * node + 1];
+        }
+    }
+
+    /**
+     * @return number of indexed points
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Find the first index in {@code [from, to)} whose v is strictly greater than {@code threshold}.
+     *
+     * @param from
+     * @param to
+     * @param threshold
+     * @return the index, or -1 if there is none
+     */
+    public int firstAbove(int from, int to, double threshold) {
+        if (from >= to) {
+            return -1;
+        }
+        return firstAbove(1, 0, leaves, from, to, threshold);
+    }
+
+    /**
+     * Find the first index in {@code [from, to)} whose v is strictly less than {@code threshold}.
+     *
+     * @param from
+     * @param to
+     * @param threshold
+     * @return the index, or -1 if there is none
+     */
+    public int firstBelow(int from, int to, double threshold) {
+        if (from >= to) {
+            return -1;
+        }
+        return firstBelow(1, 0, leaves, from, to, threshold);
+    }
+
+    private int firstAbove(int node, int nodeFrom, int nodeTo, int from, int to, double threshold) {
+        if (nodeTo <= from || to <= nodeFrom || !(max[node] > threshold)) {
+            return -1;
+        }
+        if (nodeTo - nodeFrom == 1) {
+            return nodeFrom;
+        }
+        final int mid = (nodeFrom + nodeTo) >>> 1;
+        final int result = firstAbove(2 * node, nodeFrom, mid, from, to, threshold);
+        return result >= 0 ? result : firstAbove(2 * node + 1, mid, nodeTo, from, to, threshold);
+    }
+
+    private int firstBelow(int node, int nodeFrom, int nodeTo, int from, int to, double threshold) {
+        if (nodeTo <= from || to <= nodeFrom || !(min[node] < threshold)) {
+            return -1;
+        }
+        if (nodeTo - nodeFrom == 1) {
+            return nodeFrom;
+        }
+        final int mid = (nodeFrom + nodeTo) >>> 1;
+        final int result = firstBelow(2 * node, nodeFrom, mid, from, to, threshold);
+        return result >= 0 ? result : firstBelow(2 * node + 1, mid, nodeTo, from, to, threshold);
+    }
+}
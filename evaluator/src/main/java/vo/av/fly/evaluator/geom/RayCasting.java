@@ -16,9 +16,11 @@ public class RayCasting {
 
     public static boolean DEBUG = false;
 
-    final Transformer transformer;
+    Transformer transformer;
     final GeometryFactory geomFactory = new GeometryFactory(new PrecisionModel(.001));
-    final double[] aircraftPosition; // in UV
+    double[] aircraftPosition; // in UV
+    private final double[] uv = new double[2]; // reused by add(x, y, z)
+    private double[] u = new double[0], v = new double[0]; // reused by add(x, y, z, n)
 
     Accumulator accummulator;
 
@@ -33,6 +35,21 @@ public class RayCasting {
      * @param transformer
      */
     public RayCasting(double[] aircraftPositionXYZ, double angularResolution, double minAngle, double maxAngle, boolean uniqueVperU, Transformer transformer) {
+        this(aircraftPositionXYZ, angularResolution, minAngle, maxAngle, uniqueVperU, transformer, Accumulator.Storage.SORTED_ARRAY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aircraftPositionXYZ in XYZ
+     * @param angularResolution
+     * @param minAngle
+     * @param maxAngle
+     * @param uniqueVperU
+     * @param transformer
+     * @param storage storage of the uv points in the accumulator
+     */
+    public RayCasting(double[] aircraftPositionXYZ, double angularResolution, double minAngle, double maxAngle, boolean uniqueVperU, Transformer transformer, Accumulator.Storage storage) {
         aircraftPosition = transformer.transform(aircraftPositionXYZ);
         //System.out.println(String.format("Aircraft position %.1f %.1f", aircraftPosition[0],aircraftPosition[1]));
 
@@ -42,7 +59,8 @@ public class RayCasting {
                 minAngle, maxAngle, angularResolution,
                 aircraftPosition,
                 uniqueVperU,
-                geomFactory);
+                geomFactory,
+                storage);
 
         //DEBUG = aircraftPositionXYZ[0]==100 && aircraftPositionXYZ[1]==138;
 
@@ -54,6 +72,20 @@ public class RayCasting {
         //            aircraftPositionXYZ[1]));
     }
 
+    /**
+     * Reset for another swath segment, reusing the allocated accumulator. The angular parameters and the unique u/v
+     * constraint are those given to the constructor.
+     *
+     * @param aircraftPositionXYZ in XYZ
+     * @param transformer
+     */
+    public void reset(double[] aircraftPositionXYZ, Transformer transformer) {
+        aircraftPosition = transformer.transform(aircraftPositionXYZ);
+        this.transformer = transformer;
+
+        accummulator.reset(aircraftPosition);
+    }
+
     /**
      * Add xyz point.
      * @param xyz
@@ -66,6 +98,45 @@ public class RayCasting {
         accummulator.add(uv);
     }
 
+    /**
+     * Add xyz point without allocating intermediate arrays.
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void add(double x, double y, double z){
+        if(DEBUG)
+            System.out.println(String.format("%.3f %.3f %.3f", x, y, z));
+
+        transformer.transform(x, y, z, uv);
+        accummulator.add(uv[0], uv[1]);
+    }
+
+    /**
+     * Add a batch of xyz points, see {@link Accumulator#add(double[], double[], int)}.
+     * @param x
+     * @param y
+     * @param z
+     * @param n number of points, from the start of the arrays
+     */
+    public void add(double[] x, double[] y, double[] z, int n){
+        if(DEBUG) {
+            for (int i = 0; i < n; i++)
+                System.out.println(String.format("%.3f %.3f %.3f", x[i], y[i], z[i]));
+        }
+
+        if (u.length < n) {
+            u = new double[Math.max(n, u.length << 1)];
+            v = new double[u.length];
+        }
+        for (int i = 0; i < n; i++) {
+            transformer.transform(x[i], y[i], z[i], uv);
+            u[i] = uv[0];
+            v[i] = uv[1];
+        }
+        accummulator.add(u, v, n);
+    }
+
     /**
      * Compute and return visible points.
      * @return visible points
@@ -82,6 +153,14 @@ public class RayCasting {
         return accummulator.interpolateVerticalPulses();
     }
 
+    /**
+     * Count the interpolated pulses without building them.
+     * @return same as {@code generateInterpolatedPulses().size()}
+     */
+    public int countInterpolatedPulses(){
+        return accummulator.countVerticalPulses();
+    }
+
     public static void main(String[] args) throws IOException {
         Transformer transformer = new YTransformer(53009);
 
@@ -104,7 +183,7 @@ public class RayCasting {
             y = Double.parseDouble(tokens[1]);
             z = Double.parseDouble(tokens[2]);
 
-            visibilityComputation.addXYZ(new double[]{x, y, z});
+            visibilityComputation.add(x, y, z);
         }
 
         List<EnrichedPoint2D> visiblePoints = visibilityComputation.getVisiblePoints();
@@ -0,0 +1,111 @@
+package vo.av.fly.evaluator.geom;
+
+import java.io.Serializable;
+
+/**
+ * Horizontal rigid transformation of the point cloud into the frame of a flight grid: a rotation around the z axis
+ * followed by a translation in xy. Heights are not transformed.
+ */
+public class RigidTransform2D implements Serializable {
+    private static final long serialVersionUID = -2210934755206367519L;
+
+    private final double angle;
+    private final double cos, sin;
+    private final double tx, ty;
+
+    /**
+     * Constructor.
+     *
+     * @param angle rotation around the z axis, in radians
+     * @param tx translation along x, after the rotation
+     * @param ty translation along y, after the rotation
+     */
+    public RigidTransform2D(double angle, double tx, double ty) {
+        this.angle = angle;
+        this.cos = Math.cos(angle);
+        this.sin = Math.sin(angle);
+        this.tx = tx;
+        this.ty = ty;
+    }
+
+    /**
+     * Transformation of a flight grid.
+     *
+     * @param orientation in degrees
+     * @param shiftX
+     * @param shiftY
+     * @return
+     */
+    public static RigidTransform2D valueOf(double orientation, double shiftX, double shiftY) {
+        return new RigidTransform2D(orientation * Math.PI / 180, shiftX, shiftY);
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return transformed x, same as {@code rotatedX(x, y) + tx()}
+     */
+    public double x(double x, double y) {
+        return cos * x - sin * y + tx;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return transformed y, same as {@code rotatedY(x, y) + ty()}
+     */
+    public double y(double x, double y) {
+        return sin * x + cos * y + ty;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return x after the rotation only
+     */
+    public double rotatedX(double x, double y) {
+        return cos * x - sin * y;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return y after the rotation only
+     */
+    public double rotatedY(double x, double y) {
+        return sin * x + cos * y;
+    }
+
+    /**
+     * @return rotation around the z axis, in radians
+     */
+    public double angle() {
+        return angle;
+    }
+
+    public double tx() {
+        return tx;
+    }
+
+    public double ty() {
+        return ty;
+    }
+
+    /**
+     * @param x transformed x
+     * @param y transformed y
+     * @return x before the transformation
+     */
+    public double inverseX(double x, double y) {
+        return cos * (x - tx) + sin * (y - ty);
+    }
+
+    /**
+     * @param x transformed x
+     * @param y transformed y
+     * @return y before the transformation
+     */
+    public double inverseY(double x, double y) {
+        return cos * (y - ty) - sin * (x - tx);
+    }
+}
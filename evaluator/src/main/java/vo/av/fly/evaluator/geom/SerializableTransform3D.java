@@ -1,8 +0,0 @@
-package vo.av.fly.evaluator.geom;
-
-import javax.media.j3d.Transform3D;
-import java.io.Serializable;
-
-public class SerializableTransform3D extends Transform3D implements Serializable {
-    private static final long serialVersionUID = -6864433606119403593L;
-}
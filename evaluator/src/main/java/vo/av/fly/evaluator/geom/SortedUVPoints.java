@@ -0,0 +1,288 @@
+package vo.av.fly.evaluator.geom;
+
+import java.util.Arrays;
+
+/**
+ * Primitive storage for the uv points of a swath segment.
+ * <p>
+ * Points are kept in parallel {@code u}/{@code v} arrays which are sorted once by u (lazily, on first query) and
+ * searched by binary search. Removed points are marked in a tombstone bitmap rather than shifted out of the arrays.
+ * <p>
+ * The set semantics follow those of a {@code TreeSet<Point>} ordered by {@link Accumulator.UComparator}: a point
+ * whose u value equals the u value of a point already in the set is ignored.
+ */
+public class SortedUVPoints {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] u;
+    private double[] v;
+    private long[] tombstones;
+    private double[] bufferU, bufferV; // merge sort buffers, kept across clear()
+
+    private int size = 0; // number of slots in use, including removed points
+    private int removed = 0;
+    private boolean sorted = true;
+
+    public SortedUVPoints() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity initial capacity
+     */
+    public SortedUVPoints(int capacity) {
+        capacity = Math.max(capacity, 1);
+        u = new double[capacity];
+        v = new double[capacity];
+        tombstones = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Add a point.
+     *
+     * @param pu
+     * @param pv
+     */
+    public void add(double pu, double pv) {
+        if (size == u.length) {
+            grow();
+        }
+        if (sorted && size > 0 && pu <= u[size - 1]) {
+            sorted = false;
+        }
+        u[size] = pu;
+        v[size] = pv;
+        size++;
+    }
+
+    /**
+     * Remove all the points, keeping the allocated storage.
+     */
+    public void clear() {
+        if (removed > 0) {
+            Arrays.fill(tombstones, 0, (size + 63) >>> 6, 0L);
+        }
+        size = 0;
+        removed = 0;
+        sorted = true;
+    }
+
+    /**
+     * Sort the points by u (if needed), drop removed points and points with a duplicated u value.
+     */
+    public void sort() {
+        if (sorted && removed == 0) {
+            return;
+        }
+
+        compact();
+
+        if (!sorted) {
+            mergeSort();
+            dropDuplicatedU();
+            sorted = true;
+        }
+    }
+
+    /**
+     * @return number of slots, including removed points; valid indices are {@code [0, slots())}
+     */
+    public int slots() {
+        sort();
+        return size;
+    }
+
+    /**
+     * @return number of points in the set
+     */
+    public int size() {
+        sort();
+        return size - removed;
+    }
+
+    public double u(int i) {
+        return u[i];
+    }
+
+    public double v(int i) {
+        return v[i];
+    }
+
+    /**
+     * @param i
+     * @return true if the point at index {@code i} has not been removed
+     */
+    public boolean alive(int i) {
+        return (tombstones[i >>> 6] & (1L << i)) == 0;
+    }
+
+    /**
+     * Mark the point at index {@code i} as removed. Indices of the other points are not affected.
+     *
+     * @param i
+     */
+    public void remove(int i) {
+        if (alive(i)) {
+            tombstones[i >>> 6] |= 1L << i;
+            removed++;
+        }
+    }
+
+    /**
+     * Index of the first point whose u value is not less than {@code key}.
+     *
+     * @param key
+     * @return index in {@code [0, slots()]}
+     */
+    public int lowerBound(double key) {
+        sort();
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (u[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Count the points in the index range {@code [from, to)}.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public int count(int from, int to) {
+        if (removed == 0) {
+            return to - from;
+        }
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (alive(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Overwrite the point at index {@code i}, which must not change the order of the points by u. Used together with
+     * {@link #truncate(int)} for compacting the points in place, right after {@link #slots()} (i.e. with no removed
+     * points).
+     *
+     * @param i
+     * @param pu
+     * @param pv
+     */
+    void set(int i, double pu, double pv) {
+        u[i] = pu;
+        v[i] = pv;
+    }
+
+    /**
+     * Drop all the points from index {@code newSize} onwards, see {@link #set(int, double, double)}.
+     *
+     * @param newSize
+     */
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    private void grow() {
+        int capacity = u.length << 1;
+        u = Arrays.copyOf(u, capacity);
+        v = Arrays.copyOf(v, capacity);
+        tombstones = Arrays.copyOf(tombstones, (capacity + 63) >>> 6);
+    }
+
+    /**
+     * Shift removed points out of the arrays, preserving the order of the others.
+     */
+    private void compact() {
+        if (removed == 0) {
+            return;
+        }
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (alive(i)) {
+                u[n] = u[i];
+                v[n] = v[i];
+                n++;
+            }
+        }
+        Arrays.fill(tombstones, 0L);
+        size = n;
+        removed = 0;
+    }
+
+    /**
+     * Keep the first point (in insertion order) of each run of points sharing the same u value.
+     */
+    private void dropDuplicatedU() {
+        if (size == 0) {
+            return;
+        }
+        int n = 1;
+        for (int i = 1; i < size; i++) {
+            if (u[i] != u[n - 1]) {
+                u[n] = u[i];
+                v[n] = v[i];
+                n++;
+            }
+        }
+        size = n;
+    }
+
+    /**
+     * Stable bottom-up merge sort of the parallel arrays by u.
+     */
+    private void mergeSort() {
+        if (bufferU == null || bufferU.length < size) {
+            bufferU = new double[u.length];
+            bufferV = new double[v.length];
+        }
+        double[] srcU = u, srcV = v;
+        double[] dstU = bufferU, dstV = bufferV;
+
+        for (int width = 1; width < size; width <<= 1) {
+            for (int lo = 0; lo < size; lo += width << 1) {
+                int mid = Math.min(lo + width, size);
+                int hi = Math.min(lo + (width << 1), size);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    if (srcU[j] < srcU[i]) {
+                        dstU[k] = srcU[j];
+                        dstV[k++] = srcV[j++];
+                    } else {
+                        dstU[k] = srcU[i];
+                        dstV[k++] = srcV[i++];
+                    }
+                }
+                while (i < mid) {
+                    dstU[k] = srcU[i];
+                    dstV[k++] = srcV[i++];
+                }
+                while (j < hi) {
+                    dstU[k] = srcU[j];
+                    dstV[k++] = srcV[j++];
+                }
+            }
+            double[] t = srcU;
+            srcU = dstU;
+            dstU = t;
+            t = srcV;
+            srcV = dstV;
+            dstV = t;
+        }
+
+        bufferU = dstU;
+        bufferV = dstV;
+        u = srcU;
+        v = srcV;
+    }
+}
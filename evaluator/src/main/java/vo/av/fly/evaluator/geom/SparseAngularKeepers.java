@@ -0,0 +1,154 @@
+package vo.av.fly.evaluator.geom;
+
+import java.util.Arrays;
+
+/**
+ * Keepers of the non-empty bins only, in an open-addressing table keyed by bin.
+ * <p>
+ * Suits swath segments touching a small fraction of the field of view. The non-empty bins are sorted on demand, once
+ * the points have been added, to find the next non-empty bin without walking the empty ones.
+ * @author av1966
+ */
+public class SparseAngularKeepers implements AngularKeepers {
+    private static final int INITIAL_CAPACITY = 64; // power of two
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private double[] minRange;
+    private int[] pointCount;
+    private int mask;
+
+    private int[] bins; // non-empty bins, in insertion order until sorted
+    private int occupied = 0;
+    private boolean sorted = true;
+
+    public SparseAngularKeepers() {
+        allocate(INITIAL_CAPACITY);
+        bins = new int[INITIAL_CAPACITY >>> 1];
+    }
+
+    @Override
+    public boolean add(int angularIdx, double range) {
+        int slot = slot(angularIdx);
+        if (keys[slot] == EMPTY) {
+            if (occupied + 1 > (keys.length >>> 1)) {
+                rehash(keys.length << 1);
+                slot = slot(angularIdx);
+            }
+            keys[slot] = angularIdx;
+            minRange[slot] = Double.NaN;
+            pointCount[slot] = 0;
+
+            if (occupied == bins.length) {
+                bins = Arrays.copyOf(bins, bins.length << 1);
+            }
+            if (sorted && occupied > 0 && angularIdx < bins[occupied - 1]) {
+                sorted = false;
+            }
+            bins[occupied++] = angularIdx;
+        }
+
+        pointCount[slot]++;
+        if (Double.isNaN(minRange[slot]) || minRange[slot] > range) {
+            minRange[slot] = range;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public double minRange(int angularIdx) {
+        final int slot = slot(angularIdx);
+        return keys[slot] == EMPTY ? Double.NaN : minRange[slot];
+    }
+
+    @Override
+    public int pointCount(int angularIdx) {
+        final int slot = slot(angularIdx);
+        return keys[slot] == EMPTY ? 0 : pointCount[slot];
+    }
+
+    @Override
+    public int nextOccupied(int angularIdx) {
+        if (!sorted) {
+            Arrays.sort(bins, 0, occupied);
+            sorted = true;
+        }
+
+        int lo = 0, hi = occupied;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bins[mid] < angularIdx) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (; lo < occupied; lo++) {
+            if (!Double.isNaN(minRange(bins[lo]))) {
+                return bins[lo];
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int occupied() {
+        return occupied;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        occupied = 0;
+        sorted = true;
+    }
+
+    /**
+     * Copy the keepers of all the non-empty bins into empty dense keepers.
+     * @param dense
+     */
+    public void copyTo(DenseAngularKeepers dense) {
+        for (int i = 0; i < occupied; i++) {
+            final int slot = slot(bins[i]);
+            dense.set(keys[slot], minRange[slot], pointCount[slot]);
+        }
+    }
+
+    /**
+     * Find the slot of a bin, or the empty slot where to insert it.
+     * @param angularIdx
+     * @return
+     */
+    private int slot(int angularIdx) {
+        int slot = (angularIdx * 0x9E3779B9) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != angularIdx) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        minRange = new double[capacity];
+        pointCount = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private void rehash(int capacity) {
+        final int[] oldKeys = keys;
+        final double[] oldMinRange = minRange;
+        final int[] oldPointCount = pointCount;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                final int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                minRange[slot] = oldMinRange[i];
+                pointCount[slot] = oldPointCount[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package vo.av.fly.evaluator.geom;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Growable primitive buffer of the points of a swath segment, the combiner of the points grouped by swath segment.
+ * <p>
+ * The coordinates are kept in parallel {@code x}/{@code y}/{@code z} arrays, which can be passed as they are to
+ * {@link RayCasting#add(double[], double[], double[], int)}; only the first {@link #size()} entries are in use.
+ */
+public class SwathSegmentPoints implements Serializable {
+    private static final long serialVersionUID = 3104721849266503457L;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final double[] EMPTY = new double[0];
+
+    private transient double[] x = EMPTY, y = EMPTY, z = EMPTY;
+    private transient int size = 0;
+
+    public SwathSegmentPoints() {
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity initial capacity
+     */
+    public SwathSegmentPoints(int capacity) {
+        if (capacity > 0) {
+            x = new double[capacity];
+            y = new double[capacity];
+            z = new double[capacity];
+        }
+    }
+
+    /**
+     * Add a point.
+     *
+     * @param px
+     * @param py
+     * @param pz
+     */
+    public void add(double px, double py, double pz) {
+        if (size == x.length) {
+            grow(size + 1);
+        }
+        x[size] = px;
+        y[size] = py;
+        z[size] = pz;
+        size++;
+    }
+
+    /**
+     * Add a point.
+     *
+     * @param point
+     */
+    public void add(ImmutableBasePoint point) {
+        add(point.x(), point.y(), point.z());
+    }
+
+    /**
+     * Add a point, transformed into the frame of a flight grid.
+     *
+     * @param point
+     * @param transformation
+     */
+    public void add(ImmutableBasePoint point, RigidTransform2D transformation) {
+        add(transformation.x(point.x(), point.y()), transformation.y(point.x(), point.y()), point.z());
+    }
+
+    /**
+     * Add all the points of another buffer.
+     *
+     * @param points
+     */
+    public void addAll(SwathSegmentPoints points) {
+        if (size + points.size > x.length) {
+            grow(size + points.size);
+        }
+        System.arraycopy(points.x, 0, x, size, points.size);
+        System.arraycopy(points.y, 0, y, size, points.size);
+        System.arraycopy(points.z, 0, z, size, points.size);
+        size += points.size;
+    }
+
+    /**
+     * Sort the points by x, then y, then z, so that the points of a swath segment are in the same order however they
+     * were gathered.
+     * <p>
+     * The points are first sorted by their x coordinates, truncated to make room for the indices of the points in the
+     * sort keys, then every run of points of the same truncated x by all their coordinates.
+     */
+    public void sort() {
+        if (size < INSERTION_SORT_THRESHOLD) {
+            sort(0, size - 1);
+            return;
+        }
+
+        final int indexBits = 32 - Integer.numberOfLeadingZeros(size - 1);
+        final long indexMask = (1L << indexBits) - 1;
+        final long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            final long bits = Double.doubleToLongBits(x[i]);
+            keys[i] = ((bits ^ ((bits >> 63) & Long.MAX_VALUE)) & ~indexMask) | i; // ordered as the x coordinates
+        }
+        Arrays.sort(keys);
+
+        final double[] sortedX = new double[x.length], sortedY = new double[y.length], sortedZ = new double[z.length];
+        for (int k = 0; k < size; k++) {
+            final int i = (int) (keys[k] & indexMask);
+            sortedX[k] = x[i];
+            sortedY[k] = y[i];
+            sortedZ[k] = z[i];
+        }
+        x = sortedX;
+        y = sortedY;
+        z = sortedZ;
+
+        for (int from = 0, to; from < size; from = to + 1) {
+            to = from;
+            while (to + 1 < size && (keys[to + 1] & ~indexMask) == (keys[from] & ~indexMask)) {
+                to++;
+            }
+            if (to > from) {
+                sort(from, to);
+            }
+        }
+    }
+
+    private void sort(int from, int to) {
+        while (to - from >= INSERTION_SORT_THRESHOLD) {
+            // three-way partition around the median of three, so that duplicate points do not degrade the sort
+            final int middle = (from + to) >>> 1;
+            if (compare(middle, from) < 0) {
+                swap(middle, from);
+            }
+            if (compare(to, from) < 0) {
+                swap(to, from);
+            }
+            if (compare(to, middle) < 0) {
+                swap(to, middle);
+            }
+            final double px = x[middle], py = y[middle], pz = z[middle];
+
+            int lower = from, i = from, upper = to;
+            while (i <= upper) {
+                final int c = compare(i, px, py, pz);
+                if (c < 0) {
+                    swap(lower++, i++);
+                } else if (c > 0) {
+                    swap(i, upper--);
+                } else {
+                    i++;
+                }
+            }
+
+            // recurse into the smaller part
+            if (lower - from < to - upper) {
+                sort(from, lower - 1);
+                from = upper + 1;
+            } else {
+                sort(upper + 1, to);
+                to = lower - 1;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && compare(j, x[j - 1], y[j - 1], z[j - 1]) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int i, int j) {
+        return compare(i, x[j], y[j], z[j]);
+    }
+
+    private int compare(int i, double px, double py, double pz) {
+        int c = Double.compare(x[i], px);
+        if (c == 0) {
+            c = Double.compare(y[i], py);
+        }
+        return c == 0 ? Double.compare(z[i], pz) : c;
+    }
+
+    private void swap(int i, int j) {
+        final double xi = x[i], yi = y[i], zi = z[i];
+        x[i] = x[j];
+        y[i] = y[j];
+        z[i] = z[j];
+        x[j] = xi;
+        y[j] = yi;
+        z[j] = zi;
+    }
+
+    /**
+     * Remove all the points, keeping the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return x coordinates, valid up to {@link #size()}
+     */
+    public double[] x() {
+        return x;
+    }
+
+    /**
+     * @return y coordinates, valid up to {@link #size()}
+     */
+    public double[] y() {
+        return y;
+    }
+
+    /**
+     * @return z coordinates, valid up to {@link #size()}
+     */
+    public double[] z() {
+        return z;
+    }
+
+    private void grow(int minCapacity) {
+        final int capacity = Math.max(minCapacity, Math.max(INITIAL_CAPACITY, x.length << 1));
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(x[i]);
+            out.writeDouble(y[i]);
+            out.writeDouble(z[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int n = in.readInt();
+        x = n > 0 ? new double[n] : EMPTY;
+        y = n > 0 ? new double[n] : EMPTY;
+        z = n > 0 ? new double[n] : EMPTY;
+        for (int i = 0; i < n; i++) {
+            x[i] = in.readDouble();
+            y[i] = in.readDouble();
+            z[i] = in.readDouble();
+        }
+        size = n;
+    }
+}
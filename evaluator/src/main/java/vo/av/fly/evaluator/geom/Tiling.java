@@ -0,0 +1,82 @@
+package vo.av.fly.evaluator.geom;
+
+import java.io.Serializable;
+
+/**
+ * Square tiles of the point cloud, in its own frame, with a halo around every tile.
+ * <p>
+ * A tile is keyed by its column and row, see {@link #key(long, long)}. The points of a tile are those within its
+ * square extended by the halo on every side, so a point is in several tiles when close to their borders.
+ */
+public class Tiling implements Serializable {
+    private static final long serialVersionUID = 4893520149187212643L;
+
+    private final double tileSize;
+    private final double halo;
+
+    /**
+     * Constructor.
+     *
+     * @param tileSize
+     * @param halo width of the halo around every tile
+     */
+    public Tiling(double tileSize, double halo) {
+        if (!(tileSize > 0) || !(halo >= 0)) {
+            throw new IllegalArgumentException(String.format("Invalid tiling: tile size %f, halo %f", tileSize, halo));
+        }
+        this.tileSize = tileSize;
+        this.halo = halo;
+    }
+
+    public double tileSize() {
+        return tileSize;
+    }
+
+    public double halo() {
+        return halo;
+    }
+
+    /**
+     * Pack a tile into a key.
+     *
+     * @param column
+     * @param row
+     * @return
+     */
+    public static long key(long column, long row) {
+        if (column != (int) column || row != (int) row) {
+            throw new IllegalArgumentException(String.format("Tile out of range: column %d, row %d", column, row));
+        }
+        return (column << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return key of the tile whose square contains the point
+     */
+    public long tile(double x, double y) {
+        return key((long) Math.floor(x / tileSize), (long) Math.floor(y / tileSize));
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return keys of the tiles whose square extended by the halo contains the point
+     */
+    public long[] tilesWithin(double x, double y) {
+        final long minColumn = (long) Math.floor((x - halo) / tileSize);
+        final long maxColumn = (long) Math.floor((x + halo) / tileSize);
+        final long minRow = (long) Math.floor((y - halo) / tileSize);
+        final long maxRow = (long) Math.floor((y + halo) / tileSize);
+
+        final long[] tiles = new long[(int) ((maxColumn - minColumn + 1) * (maxRow - minRow + 1))];
+        int i = 0;
+        for (long column = minColumn; column <= maxColumn; column++) {
+            for (long row = minRow; row <= maxRow; row++) {
+                tiles[i++] = key(column, row);
+            }
+        }
+        return tiles;
+    }
+}
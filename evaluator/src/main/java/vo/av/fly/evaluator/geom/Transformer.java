@@ -13,6 +13,15 @@ public interface Transformer {
      */
     public double[] transform(double... xyz);
 
+    /**
+     * Transform a point from xyz to uv, writing the result into caller-supplied storage.
+     * @param x
+     * @param y
+     * @param z
+     * @param uv output, length of at least 2
+     */
+    public void transform(double x, double y, double z, double[] uv);
+
     /**
      * Inversely transform an uv point to xyz.
      * @param uv
@@ -22,6 +22,12 @@ public class XTransformer  implements Transformer {
         };
     }
 
+    @Override
+    public void transform(double x, double y, double z, double[] uv) {
+        uv[0] = y; // u = y
+        uv[1] = z; // v = z
+    }
+
     @Override
     public double[] inverse(double... uv) {
         return new double[]{
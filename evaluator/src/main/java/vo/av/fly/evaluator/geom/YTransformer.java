@@ -23,6 +23,12 @@ public class YTransformer  implements Transformer {
         };
     }
 
+    @Override
+    public void transform(double x, double y, double z, double[] uv) {
+        uv[0] = x; // u = x
+        uv[1] = z; // v = z
+    }
+
     @Override
     public double[] inverse(double... uv) {
         //System.out.println(String.format("%.3f %.3f", uv[0], uv[1]));
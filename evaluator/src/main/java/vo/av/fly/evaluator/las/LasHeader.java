@@ -0,0 +1,133 @@
+package vo.av.fly.evaluator.las;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Public header block of a LAS 1.0 to 1.4 file, with the fields needed to read the point records.
+ */
+public class LasHeader implements Serializable {
+    private static final long serialVersionUID = -6026359412935620331L;
+
+    /**
+     * Size of the largest header, LAS 1.4.
+     */
+    public static final int MAX_HEADER_SIZE = 375;
+
+    private static final int MIN_HEADER_SIZE = 227;
+    private static final int COMPRESSED = 0x80; // point data format flag set by LASzip
+
+    private final int versionMajor, versionMinor;
+    private final long pointDataOffset;
+    private final int pointDataFormat;
+    private final int pointDataRecordLength;
+    private final long numberOfPoints;
+    private final double[] scale = new double[3];
+    private final double[] offset = new double[3];
+
+    private LasHeader(ByteBuffer buffer, int available) throws IOException {
+        if (available < MIN_HEADER_SIZE
+                || buffer.get(0) != 'L' || buffer.get(1) != 'A' || buffer.get(2) != 'S' || buffer.get(3) != 'F') {
+            throw new IOException("Not a LAS file");
+        }
+
+        versionMajor = buffer.get(24);
+        versionMinor = buffer.get(25);
+        final int headerSize = buffer.getShort(94) & 0xFFFF;
+        pointDataOffset = buffer.getInt(96) & 0xFFFFFFFFL;
+
+        final int format = buffer.get(104) & 0xFF;
+        if ((format & COMPRESSED) != 0) {
+            throw new IOException("LAZ files are not supported, decompress them to LAS first (e.g. laszip)");
+        }
+        pointDataFormat = format & 0x3F;
+        if (pointDataFormat > 10) {
+            throw new IOException("Unknown point data format " + pointDataFormat);
+        }
+        pointDataRecordLength = buffer.getShort(105) & 0xFFFF;
+
+        final long legacyNumberOfPoints = buffer.getInt(107) & 0xFFFFFFFFL;
+        if (versionMajor == 1 && versionMinor >= 4 && headerSize >= MAX_HEADER_SIZE && available >= MAX_HEADER_SIZE) {
+            final long numberOfPoints = buffer.getLong(247);
+            this.numberOfPoints = numberOfPoints != 0 ? numberOfPoints : legacyNumberOfPoints;
+        } else {
+            this.numberOfPoints = legacyNumberOfPoints;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            scale[i] = buffer.getDouble(131 + 8 * i);
+            offset[i] = buffer.getDouble(155 + 8 * i);
+        }
+    }
+
+    /**
+     * Read the header at the start of a file.
+     *
+     * @param in positioned at the start of the file
+     * @return
+     * @throws IOException if not a LAS file, or a compressed one
+     */
+    public static LasHeader read(DataInput in) throws IOException {
+        final byte[] bytes = new byte[MAX_HEADER_SIZE];
+        in.readFully(bytes, 0, MIN_HEADER_SIZE);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final int headerSize = buffer.getShort(94) & 0xFFFF;
+        final int available = Math.min(Math.max(headerSize, MIN_HEADER_SIZE), MAX_HEADER_SIZE);
+        in.readFully(bytes, MIN_HEADER_SIZE, available - MIN_HEADER_SIZE);
+
+        return new LasHeader(buffer, available);
+    }
+
+    public String version() {
+        return versionMajor + "." + versionMinor;
+    }
+
+    /**
+     * @return offset of the first point record from the start of the file
+     */
+    public long pointDataOffset() {
+        return pointDataOffset;
+    }
+
+    public int pointDataFormat() {
+        return pointDataFormat;
+    }
+
+    public int pointDataRecordLength() {
+        return pointDataRecordLength;
+    }
+
+    public long numberOfPoints() {
+        return numberOfPoints;
+    }
+
+    /**
+     * Read the coordinates of a point record, scaled and offset.
+     *
+     * @param record little endian buffer
+     * @param position start of the record in the buffer
+     * @param xyz
+     */
+    public void coordinates(ByteBuffer record, int position, double[] xyz) {
+        for (int i = 0; i < 3; i++) {
+            xyz[i] = record.getInt(position + 4 * i) * scale[i] + offset[i];
+        }
+    }
+
+    /**
+     * Read the classification of a point record.
+     *
+     * @param record little endian buffer
+     * @param position start of the record in the buffer
+     * @return
+     */
+    public int classification(ByteBuffer record, int position) {
+        return pointDataFormat < 6
+                ? record.get(position + 15) & 0x1F
+                : record.get(position + 16) & 0xFF;
+    }
+}
@@ -0,0 +1,21 @@
+package vo.av.fly.evaluator.las;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.*;
+
+import java.io.IOException;
+
+/**
+ * Hadoop input format of LAS files: the keys are the indices of the points in their file.
+ * <p>
+ * The files are split like any other file, and the point records starting within a split are read with that split.
+ */
+public class LasInputFormat extends FileInputFormat<LongWritable, LasPoint> {
+
+    @Override
+    public RecordReader<LongWritable, LasPoint> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+            throws IOException {
+        reporter.setStatus(split.toString());
+        return new LasRecordReader((FileSplit) split, job);
+    }
+}
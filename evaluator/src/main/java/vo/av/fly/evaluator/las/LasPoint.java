@@ -0,0 +1,46 @@
+package vo.av.fly.evaluator.las;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Point record of a LAS file, reused by {@link LasRecordReader}.
+ */
+public class LasPoint implements Writable {
+    private final double[] xyz = new double[3];
+    private int classification;
+
+    /**
+     * @return scaled and offset coordinates
+     */
+    public double[] xyz() {
+        return xyz;
+    }
+
+    public int classification() {
+        return classification;
+    }
+
+    void setClassification(int classification) {
+        this.classification = classification;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(xyz[0]);
+        out.writeDouble(xyz[1]);
+        out.writeDouble(xyz[2]);
+        out.writeByte(classification);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        xyz[0] = in.readDouble();
+        xyz[1] = in.readDouble();
+        xyz[2] = in.readDouble();
+        classification = in.readUnsignedByte();
+    }
+}
@@ -0,0 +1,108 @@
+package vo.av.fly.evaluator.las;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reader of the point records of a LAS file starting within a split, read by blocks of records.
+ */
+public class LasRecordReader implements RecordReader<LongWritable, LasPoint> {
+    private static final int BLOCK_SIZE = 1 << 16; // in bytes
+
+    private final FSDataInputStream in;
+    private final LasHeader header;
+    private final long firstPoint, endPoint;
+    private long nextPoint;
+
+    private final byte[] block;
+    private final ByteBuffer blockBuffer;
+    private int blockPosition, blockEnd;
+
+    /**
+     * Constructor.
+     *
+     * @param split
+     * @param job
+     * @throws IOException
+     */
+    public LasRecordReader(FileSplit split, JobConf job) throws IOException {
+        final Path path = split.getPath();
+        final FileSystem fs = path.getFileSystem(job);
+        in = fs.open(path);
+        header = LasHeader.read(in);
+
+        // a point belongs to the split its record starts in
+        final long recordLength = header.pointDataRecordLength();
+        final long dataOffset = header.pointDataOffset();
+        firstPoint = Math.min(header.numberOfPoints(), firstPointFrom(split.getStart(), dataOffset, recordLength));
+        endPoint = Math.max(firstPoint,
+                Math.min(header.numberOfPoints(), firstPointFrom(split.getStart() + split.getLength(), dataOffset, recordLength)));
+        nextPoint = firstPoint;
+
+        in.seek(dataOffset + firstPoint * recordLength);
+
+        block = new byte[(int) Math.max(recordLength, BLOCK_SIZE / recordLength * recordLength)];
+        blockBuffer = ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long firstPointFrom(long position, long dataOffset, long recordLength) {
+        return position <= dataOffset ? 0 : (position - dataOffset + recordLength - 1) / recordLength;
+    }
+
+    @Override
+    public boolean next(LongWritable key, LasPoint value) throws IOException {
+        if (nextPoint >= endPoint) {
+            return false;
+        }
+
+        final int recordLength = header.pointDataRecordLength();
+        if (blockPosition == blockEnd) {
+            final long remaining = (endPoint - nextPoint) * recordLength;
+            blockEnd = (int) Math.min(block.length, remaining);
+            in.readFully(block, 0, blockEnd);
+            blockPosition = 0;
+        }
+
+        key.set(nextPoint);
+        header.coordinates(blockBuffer, blockPosition, value.xyz());
+        value.setClassification(header.classification(blockBuffer, blockPosition));
+
+        blockPosition += recordLength;
+        nextPoint++;
+        return true;
+    }
+
+    @Override
+    public LongWritable createKey() {
+        return new LongWritable();
+    }
+
+    @Override
+    public LasPoint createValue() {
+        return new LasPoint();
+    }
+
+    @Override
+    public long getPos() throws IOException {
+        return header.pointDataOffset() + nextPoint * header.pointDataRecordLength();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        return endPoint == firstPoint ? 1 : (float) (nextPoint - firstPoint) / (endPoint - firstPoint);
+    }
+}
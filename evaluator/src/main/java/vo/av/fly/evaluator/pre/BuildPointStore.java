@@ -0,0 +1,189 @@
+package vo.av.fly.evaluator.pre;
+
+import org.apache.commons.cli.*;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.log4j.Logger;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.Function2;
+import vo.av.fly.evaluator.Functions;
+import vo.av.fly.evaluator.geom.ImmutableBasePoint;
+import vo.av.fly.evaluator.geom.SwathSegmentPoints;
+import vo.av.fly.evaluator.store.PointStoreWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Convert a point cloud in text or LAS format into a point store, which the evaluator reads without parsing, see
+ * {@link vo.av.fly.evaluator.store.PointStoreIndex}.
+ * <p>
+ * The point store is a directory of one store file per partition of the input, {@code part-<partition>.pstore}. The
+ * points of a partition are grouped by square tiles, kept in their input order within a tile. Each task holds the
+ * points of its partition in memory during the conversion, about 70 bytes per point, so large point clouds need
+ * enough partitions.
+ */
+public class BuildPointStore {
+    static Logger LOG = Logger.getLogger(BuildPointStore.class);
+
+    public static void main(String[] args) throws IOException {
+        final CommandLine cmd = parseArgs(args);
+
+        final String input = cmd.getOptionValue("i");
+        final String output = cmd.getOptionValue("o");
+        final double tileSize = cmd.hasOption("tile") ? Double.parseDouble(cmd.getOptionValue("tile")) : 50;
+        final double scale = cmd.hasOption("scale") ? Double.parseDouble(cmd.getOptionValue("scale")) : .001;
+        final int partitions = cmd.hasOption("p") ? Integer.parseInt(cmd.getOptionValue("p")) : 8;
+        final int[] classes = Functions.parseClasses(cmd.getOptionValues("classes"));
+
+        final JavaSparkContext sc = new JavaSparkContext(new SparkConf().setAppName("FO - Build Point Store"));
+
+        final JavaRDD<ImmutableBasePoint> cloud = Functions.readPoints(
+                sc, input, partitions, new double[3], classes, null
+        );
+
+        final FileSystem fs = new Path(output).getFileSystem(sc.hadoopConfiguration());
+        final Path outputPath = fs.makeQualified(new Path(output));
+        if (fs.exists(outputPath)) {
+            throw new FileAlreadyExistsException(String.format("Output %s already exists", outputPath));
+        }
+        fs.mkdirs(outputPath);
+        final String directory = outputPath.toString();
+
+        final long start = System.currentTimeMillis();
+        final List<Integer> counts = cloud
+                .mapPartitionsWithIndex(new Function2<Integer, Iterator<ImmutableBasePoint>, Iterator<Integer>>() {
+                    private static final long serialVersionUID = -3920874562117435207L;
+
+                    @Override
+                    public Iterator<Integer> call(Integer partition, Iterator<ImmutableBasePoint> samples)
+                            throws IOException {
+                        final SwathSegmentPoints points = new SwathSegmentPoints();
+                        while (samples.hasNext()) {
+                            final ImmutableBasePoint sample = samples.next();
+                            points.add(sample.x(), sample.y(), sample.z());
+                        }
+                        if (points.size() > 0) {
+                            final Path file = new Path(directory, String.format(
+                                    "part-%05d.%s", partition, Functions.POINT_STORE_EXTENSION
+                            ));
+                            write(points, tileSize, scale, file.getFileSystem(new Configuration()).create(file));
+                        }
+                        return Collections.singletonList(points.size()).iterator();
+                    }
+                }, false)
+                .collect();
+
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        LOG.info(String.format("Wrote %d points into %s in %d ms", total, output, System.currentTimeMillis() - start));
+        sc.stop();
+    }
+
+    /**
+     * Write the points into a point store.
+     *
+     * @param points
+     * @param tileSize
+     * @param scale quantisation step of the coordinates
+     * @param out closed once written
+     * @throws IOException
+     */
+    public static void write(SwathSegmentPoints points, double tileSize, double scale, java.io.OutputStream out)
+            throws IOException {
+        final int n = points.size();
+        final double[] x = points.x(), y = points.y(), z = points.z();
+
+        final double[] min = new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        for (int i = 0; i < n; i++) {
+            min[0] = Math.min(min[0], x[i]);
+            min[1] = Math.min(min[1], y[i]);
+            min[2] = Math.min(min[2], z[i]);
+        }
+        final double[] offset = new double[3];
+        for (int i = 0; i < 3; i++) {
+            offset[i] = n == 0 ? 0 : Math.floor(min[i]);
+        }
+
+        // sort by tile, keeping the input order within a tile
+        final long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            final long column = (long) Math.floor((x[i] - offset[0]) / tileSize);
+            final long row = (long) Math.floor((y[i] - offset[1]) / tileSize);
+            final long tile = (row << 16) | column;
+            if (column >= 1 << 16 || row >= 1 << 15) {
+                throw new IllegalArgumentException("Too many tiles, use larger tiles");
+            }
+            keys[i] = (tile << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+
+        final PointStoreWriter writer = new PointStoreWriter(out, new double[]{scale, scale, scale}, offset);
+        for (int from = 0, to; from < n; from = to) {
+            final long tile = keys[from] >>> 32;
+            to = from + 1;
+            while (to < n && keys[to] >>> 32 == tile) {
+                to++;
+            }
+            writer.writeTile(x, y, z, order, from, to);
+        }
+        writer.close();
+    }
+
+    public static CommandLine parseArgs(String[] args) {
+        Options options = new Options();
+
+        Option o;
+
+        o = new Option("i", "input", true, "input point cloud, text or LAS files, directories or globs");
+        options.addOption(o);
+
+        o = new Option("o", "output", true, "output point store directory (." + Functions.POINT_STORE_EXTENSION + ")");
+        options.addOption(o);
+
+        o = new Option("tile", true, "tile size (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("scale", true, "quantisation step of the coordinates (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("p", "partitions", true, "min. number of partitions, one store file each (optional)");
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("classes", true, "LAS classifications of the points to keep (optional)");
+        o.setArgs(Option.UNLIMITED_VALUES);
+        o.setRequired(false);
+        options.addOption(o);
+
+        CommandLineParser parser = new PosixParser();
+        CommandLine cmd = null;
+
+        try {
+            cmd = parser.parse(options, args);
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e.getMessage() + "\n");
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(" ", options, true);
+            System.exit(-1);
+        }
+
+        return cmd;
+    }
+}
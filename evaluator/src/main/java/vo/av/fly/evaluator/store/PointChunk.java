@@ -0,0 +1,101 @@
+package vo.av.fly.evaluator.store;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Chunk of a point store, with quantised coordinates; reused by {@link PointStoreRecordReader}.
+ */
+public class PointChunk implements Writable {
+    private final double[] scale = new double[3];
+    private final double[] offset = new double[3];
+    private int count = 0;
+    private int[] x = new int[0], y = new int[0], z = new int[0];
+
+    /**
+     * @return number of points
+     */
+    public int count() {
+        return count;
+    }
+
+    public double x(int i) {
+        return x[i] * scale[0] + offset[0];
+    }
+
+    public double y(int i) {
+        return y[i] * scale[1] + offset[1];
+    }
+
+    public double z(int i) {
+        return z[i] * scale[2] + offset[2];
+    }
+
+    /**
+     * Read a chunk.
+     *
+     * @param in positioned at the chunk
+     * @param count number of points
+     * @param index index of the point store
+     * @param buffer read buffer, of {@code 4 * count} bytes at least
+     * @throws IOException
+     */
+    void read(DataInput in, int count, PointStoreIndex index, byte[] buffer) throws IOException {
+        System.arraycopy(index.scale(), 0, scale, 0, 3);
+        System.arraycopy(index.offset(), 0, offset, 0, 3);
+        ensureCapacity(count);
+        this.count = count;
+        readColumn(in, x, buffer);
+        readColumn(in, y, buffer);
+        readColumn(in, z, buffer);
+    }
+
+    private void readColumn(DataInput in, int[] column, byte[] buffer) throws IOException {
+        in.readFully(buffer, 0, 4 * count);
+        for (int i = 0, b = 0; i < count; i++, b += 4) {
+            column[i] = (buffer[b] << 24) | ((buffer[b + 1] & 0xFF) << 16) | ((buffer[b + 2] & 0xFF) << 8) | (buffer[b + 3] & 0xFF);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (x.length < count) {
+            x = Arrays.copyOf(x, count);
+            y = Arrays.copyOf(y, count);
+            z = Arrays.copyOf(z, count);
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            out.writeDouble(scale[i]);
+            out.writeDouble(offset[i]);
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(x[i]);
+            out.writeInt(y[i]);
+            out.writeInt(z[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            scale[i] = in.readDouble();
+            offset[i] = in.readDouble();
+        }
+        final int count = in.readInt();
+        ensureCapacity(count);
+        this.count = count;
+        for (int i = 0; i < count; i++) {
+            x[i] = in.readInt();
+            y[i] = in.readInt();
+            z[i] = in.readInt();
+        }
+    }
+}
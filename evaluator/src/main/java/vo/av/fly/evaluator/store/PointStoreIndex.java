@@ -0,0 +1,173 @@
+package vo.av.fly.evaluator.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Index of a point store file, written at its end: the quantisation of the coordinates, and the position, number of
+ * points and bounding box of every chunk.
+ * <p>
+ * A point store file holds the points of a point cloud in chunks of points of the same tile. A chunk is stored by
+ * columns, the x then y then z coordinates of its points, as int32 values {@code X} such that
+ * {@code x = X * scale + offset}. The file ends with the index, followed by the position of the index and the magic
+ * number.
+ */
+public class PointStoreIndex {
+    public static final int MAGIC = 0x464F5053; // "FOPS"
+    public static final int VERSION = 1;
+    public static final int TRAILER_SIZE = 8 + 4; // position of the index, magic number
+
+    private final double[] scale;
+    private final double[] offset;
+
+    private int chunkCount = 0;
+    private long[] positions = new long[16];
+    private int[] counts = new int[16];
+    private double[] bounds = new double[16 * 6]; // min x, y, z then max x, y, z of every chunk
+
+    /**
+     * Constructor.
+     *
+     * @param scale
+     * @param offset
+     */
+    public PointStoreIndex(double[] scale, double[] offset) {
+        this.scale = scale.clone();
+        this.offset = offset.clone();
+    }
+
+    /**
+     * Add a chunk.
+     *
+     * @param position position of the chunk in the file
+     * @param count number of points
+     * @param bounds min x, y, z then max x, y, z of the points
+     */
+    public void add(long position, int count, double[] bounds) {
+        if (chunkCount == positions.length) {
+            positions = Arrays.copyOf(positions, chunkCount << 1);
+            counts = Arrays.copyOf(counts, chunkCount << 1);
+            this.bounds = Arrays.copyOf(this.bounds, (chunkCount << 1) * 6);
+        }
+        positions[chunkCount] = position;
+        counts[chunkCount] = count;
+        System.arraycopy(bounds, 0, this.bounds, chunkCount * 6, 6);
+        chunkCount++;
+    }
+
+    public double[] scale() {
+        return scale;
+    }
+
+    public double[] offset() {
+        return offset;
+    }
+
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    public long position(int chunk) {
+        return positions[chunk];
+    }
+
+    public int count(int chunk) {
+        return counts[chunk];
+    }
+
+    /**
+     * @return total number of points
+     */
+    public long pointCount() {
+        long n = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            n += counts[i];
+        }
+        return n;
+    }
+
+    /**
+     * Test whether a chunk may have points within a horizontal bounding box.
+     *
+     * @param chunk
+     * @param bbox min x, min y, max x, max y, or null for no bounding box
+     * @return
+     */
+    public boolean intersects(int chunk, double[] bbox) {
+        if (bbox == null) {
+            return true;
+        }
+        final int b = chunk * 6;
+        return bounds[b] <= bbox[2] && bounds[b + 3] >= bbox[0]
+                && bounds[b + 1] <= bbox[3] && bounds[b + 4] >= bbox[1];
+    }
+
+    /**
+     * Write the index and the trailer.
+     *
+     * @param out
+     * @param position position of the index in the file
+     * @throws IOException
+     */
+    public void write(DataOutput out, long position) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (int i = 0; i < 3; i++) {
+            out.writeDouble(scale[i]);
+        }
+        for (int i = 0; i < 3; i++) {
+            out.writeDouble(offset[i]);
+        }
+        out.writeInt(chunkCount);
+        for (int c = 0; c < chunkCount; c++) {
+            out.writeLong(positions[c]);
+            out.writeInt(counts[c]);
+            for (int i = 0; i < 6; i++) {
+                out.writeDouble(bounds[c * 6 + i]);
+            }
+        }
+
+        out.writeLong(position);
+        out.writeInt(MAGIC);
+    }
+
+    /**
+     * Read the index.
+     *
+     * @param in positioned at the index, see {@link #TRAILER_SIZE}
+     * @return
+     * @throws IOException if not a point store
+     */
+    public static PointStoreIndex read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a point store");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported point store version " + version);
+        }
+
+        final double[] scale = new double[3], offset = new double[3];
+        for (int i = 0; i < 3; i++) {
+            scale[i] = in.readDouble();
+        }
+        for (int i = 0; i < 3; i++) {
+            offset[i] = in.readDouble();
+        }
+        final PointStoreIndex index = new PointStoreIndex(scale, offset);
+
+        final int chunkCount = in.readInt();
+        final double[] bounds = new double[6];
+        for (int c = 0; c < chunkCount; c++) {
+            final long position = in.readLong();
+            final int count = in.readInt();
+            for (int i = 0; i < 6; i++) {
+                bounds[i] = in.readDouble();
+            }
+            index.add(position, count, bounds);
+        }
+        return index;
+    }
+}
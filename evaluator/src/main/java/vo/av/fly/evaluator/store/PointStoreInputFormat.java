@@ -0,0 +1,53 @@
+package vo.av.fly.evaluator.store;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.*;
+
+import java.io.IOException;
+
+/**
+ * Hadoop input format of point store files: one record per chunk, keyed by the position of the chunk in its file.
+ * <p>
+ * The files are split like any other file, and the chunks starting within a split are read with that split. The chunks
+ * outside the bounding box set with {@link #setBoundingBox(JobConf, double[])} are skipped without being read.
+ */
+public class PointStoreInputFormat extends FileInputFormat<LongWritable, PointChunk> {
+    public static final String BOUNDING_BOX = "fo.pointstore.bbox";
+
+    /**
+     * Set the horizontal bounding box of the points to read.
+     *
+     * @param job
+     * @param bbox min x, min y, max x, max y, or null for all the points
+     */
+    public static void setBoundingBox(JobConf job, double[] bbox) {
+        if (bbox == null) {
+            job.unset(BOUNDING_BOX);
+        } else {
+            job.set(BOUNDING_BOX, String.format("%s,%s,%s,%s", bbox[0], bbox[1], bbox[2], bbox[3]));
+        }
+    }
+
+    /**
+     * @param job
+     * @return bounding box, or null
+     */
+    public static double[] getBoundingBox(JobConf job) {
+        final String[] values = job.getStrings(BOUNDING_BOX);
+        if (values == null) {
+            return null;
+        }
+        final double[] bbox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bbox[i] = Double.parseDouble(values[i]);
+        }
+        return bbox;
+    }
+
+    @Override
+    public RecordReader<LongWritable, PointChunk> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+            throws IOException {
+        reporter.setStatus(split.toString());
+        return new PointStoreRecordReader((FileSplit) split, job);
+    }
+}
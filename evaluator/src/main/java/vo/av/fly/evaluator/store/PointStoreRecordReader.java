@@ -0,0 +1,97 @@
+package vo.av.fly.evaluator.store;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+
+import java.io.IOException;
+
+/**
+ * Reader of the chunks of a point store file starting within a split.
+ */
+public class PointStoreRecordReader implements RecordReader<LongWritable, PointChunk> {
+    private final FSDataInputStream in;
+    private final PointStoreIndex index;
+    private final double[] bbox;
+    private final long start, end;
+    private int chunk = 0;
+    private byte[] buffer = new byte[0];
+
+    /**
+     * Constructor.
+     *
+     * @param split
+     * @param job
+     * @throws IOException
+     */
+    public PointStoreRecordReader(FileSplit split, JobConf job) throws IOException {
+        final Path path = split.getPath();
+        final FileSystem fs = path.getFileSystem(job);
+        final long length = fs.getFileStatus(path).getLen();
+
+        in = fs.open(path);
+        in.seek(length - PointStoreIndex.TRAILER_SIZE);
+        final long indexPosition = in.readLong();
+        if (in.readInt() != PointStoreIndex.MAGIC) {
+            throw new IOException("Not a point store: " + path);
+        }
+        in.seek(indexPosition);
+        index = PointStoreIndex.read(in);
+
+        bbox = PointStoreInputFormat.getBoundingBox(job);
+        start = split.getStart();
+        end = split.getStart() + split.getLength();
+    }
+
+    @Override
+    public boolean next(LongWritable key, PointChunk value) throws IOException {
+        // chunks starting within the split, within the bounding box
+        while (chunk < index.chunkCount() && index.position(chunk) < end
+                && (index.position(chunk) < start || !index.intersects(chunk, bbox))) {
+            chunk++;
+        }
+        if (chunk == index.chunkCount() || index.position(chunk) >= end) {
+            return false;
+        }
+
+        final int count = index.count(chunk);
+        if (buffer.length < 4 * count) {
+            buffer = new byte[4 * count];
+        }
+        in.seek(index.position(chunk));
+        value.read(in, count, index, buffer);
+        key.set(index.position(chunk));
+
+        chunk++;
+        return true;
+    }
+
+    @Override
+    public LongWritable createKey() {
+        return new LongWritable();
+    }
+
+    @Override
+    public PointChunk createValue() {
+        return new PointChunk();
+    }
+
+    @Override
+    public long getPos() throws IOException {
+        return chunk < index.chunkCount() ? index.position(chunk) : end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        return start == end ? 1 : Math.min(1, (float) (getPos() - start) / (end - start));
+    }
+}
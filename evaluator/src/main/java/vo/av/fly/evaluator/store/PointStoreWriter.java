@@ -0,0 +1,98 @@
+package vo.av.fly.evaluator.store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writer of a point store file, see {@link PointStoreIndex}.
+ */
+public class PointStoreWriter {
+    /**
+     * Max number of points per chunk.
+     */
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final PointStoreIndex index;
+    private final double[] scale, offset;
+    private long position = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     * @param scale quantisation step of the coordinates
+     * @param offset origin of the quantised coordinates
+     */
+    public PointStoreWriter(OutputStream out, double[] scale, double[] offset) {
+        this.out = new DataOutputStream(out);
+        this.index = new PointStoreIndex(scale, offset);
+        this.scale = scale.clone();
+        this.offset = offset.clone();
+    }
+
+    /**
+     * Write the points of a tile, in chunks of up to {@link #CHUNK_SIZE} points.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param points indices of the points of the tile
+     * @param from first index
+     * @param to last index, exclusive
+     * @throws IOException
+     * @throws IllegalArgumentException if a coordinate is out of the range of the quantisation
+     */
+    public void writeTile(double[] x, double[] y, double[] z, int[] points, int from, int to) throws IOException {
+        final int[][] quantised = new int[3][Math.min(CHUNK_SIZE, to - from)];
+        final double[] bounds = new double[6];
+
+        for (int start = from; start < to; start += CHUNK_SIZE) {
+            final int count = Math.min(CHUNK_SIZE, to - start);
+            Arrays.fill(bounds, 0, 3, Double.POSITIVE_INFINITY);
+            Arrays.fill(bounds, 3, 6, Double.NEGATIVE_INFINITY);
+
+            for (int i = 0; i < count; i++) {
+                final int p = points[start + i];
+                quantise(x[p], 0, quantised[0], i, bounds);
+                quantise(y[p], 1, quantised[1], i, bounds);
+                quantise(z[p], 2, quantised[2], i, bounds);
+            }
+
+            index.add(position, count, bounds);
+            for (int[] column : quantised) {
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(column[i]);
+                }
+            }
+            position += 3L * 4 * count;
+        }
+    }
+
+    private void quantise(double value, int axis, int[] column, int i, double[] bounds) {
+        final double q = Math.rint((value - offset[axis]) / scale[axis]);
+        if (!(q >= Integer.MIN_VALUE && q <= Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException(String.format(
+                    "Coordinate %f out of the range of the point store (offset %f, scale %f)",
+                    value, offset[axis], scale[axis]));
+        }
+        column[i] = (int) q;
+
+        // bounds of the coordinates as read back
+        final double v = column[i] * scale[axis] + offset[axis];
+        bounds[axis] = Math.min(bounds[axis], v);
+        bounds[axis + 3] = Math.max(bounds[axis + 3], v);
+    }
+
+    /**
+     * Write the index and close the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        index.write(out, position);
+        out.close();
+    }
+}
@@ -10,6 +10,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -33,6 +35,12 @@ public class RemoteEvaluator implements Evaluator {
 
     private static long timeout; // m-secs
 
+    // flight grids evaluated together, when larger than 1
+    private static int batchSize = 1;
+    private static final long BATCH_LINGER = 200; // m-secs waited for more flight grids before sending a batch
+    private static Batch nextBatch;
+    private static final Object SEND_LOCK = new Object();
+
     //static Map<FlightGrid, Integer> resultPool; // this is not memory friendly - all results are deposited reader this map, though the objects are small and their population is not supposed to be too learge, this should be revised
     private static Map<FlightGrid, Integer> resultPool;
 
@@ -49,6 +57,10 @@ public class RemoteEvaluator implements Evaluator {
         RemoteEvaluator.timeout = _timeout;
     }
 
+    private static void setBatchSize(int _batchSize){
+        RemoteEvaluator.batchSize = _batchSize;
+    }
+
     private static void initiateResultPool(){
         RemoteEvaluator.resultPool = new ConcurrentHashMap();
     }
@@ -101,6 +113,9 @@ public class RemoteEvaluator implements Evaluator {
 
     //@Override
     public static int eval(FlightGrid flightGrid) {
+        if (batchSize > 1) {
+            return evalInBatch(flightGrid);
+        }
         try {
             // send the flight grid definition to server
             System.out.println(String.format("%s Send    %s to server", new DateTime(), flightGrid));
@@ -172,10 +187,130 @@ public class RemoteEvaluator implements Evaluator {
         }
     }
 
+    /**
+     * Evaluate a {@code FlightGrid} together with the flight grids evaluated concurrently, in a single message to the
+     * server: the first flight grid of a batch waits for up to {@code BATCH_LINGER} ms, or until the batch is full,
+     * then sends the batch and deposits all its scores in the result pool.
+     *
+     * @param flightGrid
+     * @return
+     */
+    private static int evalInBatch(FlightGrid flightGrid) {
+        try {
+            final Batch batch;
+            final boolean first;
+            synchronized (RemoteEvaluator.class) {
+                if (nextBatch == null) {
+                    nextBatch = new Batch();
+                }
+                batch = nextBatch;
+                first = batch.flightGrids.isEmpty();
+                batch.flightGrids.add(flightGrid);
+                if (batch.flightGrids.size() >= batchSize) {
+                    nextBatch = null;
+                    RemoteEvaluator.class.notifyAll();
+                }
+
+                if (first) {
+                    final long deadline = System.currentTimeMillis() + BATCH_LINGER;
+                    long now;
+                    while (nextBatch == batch && (now = System.currentTimeMillis()) < deadline) {
+                        RemoteEvaluator.class.wait(deadline - now);
+                    }
+                    if (nextBatch == batch) {
+                        nextBatch = null;
+                    }
+                }
+            }
+
+            if (first) {
+                send(batch);
+            }
+
+            final long start = System.currentTimeMillis();
+            synchronized (batch) {
+                while (!batch.done && System.currentTimeMillis() - start < timeout) {
+                    batch.wait(Math.max(1, timeout - (System.currentTimeMillis() - start)));
+                }
+            }
+
+            final Integer foundScore = resultPool.get(flightGrid);
+            final int score = foundScore == null ? -Integer.MAX_VALUE : foundScore;
+            if (foundScore == null) {
+                System.out.println(String.format("%s %s Timeout after %d ms", new DateTime(), flightGrid, System.currentTimeMillis() - start));
+            }
+
+            // log the result
+            LOG.info(String.format(
+                    "%02d\t%03d\t%03d\t%d",
+                    flightGrid.orientation(), flightGrid.shiftX(), flightGrid.shiftY(), score
+            ));
+
+            return score;
+        } catch (Exception ex) {
+            LOG.error(ex, ex);
+            return 0;
+        }
+    }
+
+    /**
+     * Send a batch of flight grids to the server, one batch at a time, and deposit their scores to the result pool.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    private static void send(Batch batch) throws IOException {
+        try {
+            StringBuilder message = new StringBuilder();
+            for (FlightGrid flightGrid : batch.flightGrids) {
+                message.append(message.length() == 0 ? "" : CmdLnArgs.DELIM).append(String.format(
+                        "%d" + CmdLnArgs.DELIM + "%d" + CmdLnArgs.DELIM + "%d",
+                        flightGrid.orientation(), flightGrid.shiftX(), flightGrid.shiftY()
+                ));
+            }
+
+            synchronized (SEND_LOCK) {
+                System.out.println(String.format("%s Send    %d flight grids to server", new DateTime(), batch.flightGrids.size()));
+                writer.println(message);
+                writer.flush();
+
+                // one line per flight grid
+                for (int i = 0; i < batch.flightGrids.size(); i++) {
+                    String msgFromServer = reader.readLine();
+                    if (msgFromServer == null) {
+                        break;
+                    }
+                    String[] tokens = msgFromServer.split(CmdLnArgs.DELIM);
+
+                    FlightGrid receivedFlightGrid = FlightGrid.makeFlightGrid(
+                            Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2])
+                    );
+                    int receivedScore = Integer.parseInt(tokens[3]);
+                    System.out.println(String.format("%s Receive score of %d for %s from server", new DateTime(), receivedScore, receivedFlightGrid));
+                    resultPool.put(receivedFlightGrid, receivedScore);
+                }
+            }
+        } finally {
+            synchronized (batch) {
+                batch.done = true;
+                batch.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flight grids sent in a single message.
+     */
+    private static final class Batch {
+        private final List<FlightGrid> flightGrids = new ArrayList<>();
+        private boolean done = false;
+    }
+
     public static final class Builder {
         private final String hostName;
         private final int portNumber;
         private long timeout = 1800000; // m-secs
+        private int batchSize = 1;
 
         /**
          * Constructor.
@@ -192,6 +327,15 @@ public class RemoteEvaluator implements Evaluator {
             return this;
         }
 
+        /**
+         * @param batchSize max. number of flight grids evaluated together, see {@link RemoteEvaluator#evalInBatch(FlightGrid)}
+         * @return
+         */
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
         public RemoteEvaluator build() {
 
             try {
@@ -204,6 +348,7 @@ public class RemoteEvaluator implements Evaluator {
                 RemoteEvaluator.setReader(reader);
                 RemoteEvaluator.setWriter(writer);
                 RemoteEvaluator.setTimeout(timeout);
+                RemoteEvaluator.setBatchSize(batchSize);
                 RemoteEvaluator.initiateResultPool();
 
                 return new RemoteEvaluator();
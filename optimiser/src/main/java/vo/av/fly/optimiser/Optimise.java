@@ -17,6 +17,8 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 import static io.jenetics.engine.EvolutionResult.toBestPhenotype;
@@ -71,6 +73,9 @@ public class Optimise {
                 if (cmd.hasOption("timeout")) {
                     evaluatorBuilder.setTimeout(Long.parseLong(cmd.getOptionValue("timeout")));
                 }
+                if (cmd.hasOption("batch")) {
+                    evaluatorBuilder.setBatchSize(Integer.parseInt(cmd.getOptionValue("batch")));
+                }
                 evaluator = evaluatorBuilder.build();
                 fitnessFunction = RemoteEvaluator::eval;
                 break;
@@ -180,6 +185,14 @@ public class Optimise {
                 return;
         }
 
+        // evaluate the flight grids of a generation concurrently, one task each, for the remote evaluator to batch them
+        ExecutorService executor = null;
+        if (cmd.hasOption("batch") && cmd.getOptionValue("evaluator").equals("remote")) {
+            System.setProperty("io.jenetics.concurrency.maxBatchSize", "1");
+            executor = Executors.newFixedThreadPool(Integer.parseInt(cmd.getOptionValue("batch")));
+            engineBuilder.executor(executor);
+        }
+
         // all configurations set, build the evolution engine
         Engine engine = engineBuilder.build();
 
@@ -226,6 +239,10 @@ public class Optimise {
         LOG.info(String.format("\n%s\n%s\n", statistics.toString(), bestPhenotype.toString()));
 
         evaluator.requestToTerminateService();
+
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 
 
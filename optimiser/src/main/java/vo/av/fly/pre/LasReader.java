@@ -0,0 +1,103 @@
+package vo.av.fly.pre;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader of the points of a local LAS 1.0 to 1.4 file.
+ * <p>
+ * Same as the LAS input format of the evaluator, which this module does not depend on. Compressed (LAZ) files are not
+ * supported.
+ */
+public class LasReader {
+    private static final int MIN_HEADER_SIZE = 227;
+    private static final int MAX_HEADER_SIZE = 375;
+    private static final int COMPRESSED = 0x80; // point data format flag set by LASzip
+    private static final int BLOCK_SIZE = 1 << 16; // in bytes
+
+    private LasReader() {
+    }
+
+    /**
+     * Read all the points of a file, scaled and offset.
+     *
+     * @param fileName
+     * @param classes classifications of the points to keep, or null to keep all the points
+     * @param consumer
+     * @throws IOException if not a LAS file, or a compressed one
+     */
+    public static void read(String fileName, int[] classes, PointParser.PointConsumer consumer) throws IOException {
+        boolean[] keep = null;
+        if (classes != null) {
+            keep = new boolean[256];
+            for (int c : classes) {
+                if (c < 0 || c >= keep.length) {
+                    throw new IllegalArgumentException("Invalid LAS classification " + c);
+                }
+                keep[c] = true;
+            }
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            final FileChannel channel = file.getChannel();
+
+            final ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (header.position() < MIN_HEADER_SIZE
+                    || header.get(0) != 'L' || header.get(1) != 'A' || header.get(2) != 'S' || header.get(3) != 'F') {
+                throw new IOException("Not a LAS file: " + fileName);
+            }
+
+            final int versionMinor = header.get(25);
+            final int headerSize = header.getShort(94) & 0xFFFF;
+            final long pointDataOffset = header.getInt(96) & 0xFFFFFFFFL;
+            final int format = header.get(104) & 0xFF;
+            if ((format & COMPRESSED) != 0) {
+                throw new IOException("LAZ files are not supported, decompress them to LAS first (e.g. laszip): " + fileName);
+            }
+            final int pointDataFormat = format & 0x3F;
+            final int recordLength = header.getShort(105) & 0xFFFF;
+            long numberOfPoints = header.getInt(107) & 0xFFFFFFFFL;
+            if (header.get(24) == 1 && versionMinor >= 4 && headerSize >= MAX_HEADER_SIZE
+                    && header.position() >= MAX_HEADER_SIZE && header.getLong(247) != 0) {
+                numberOfPoints = header.getLong(247);
+            }
+            final double[] scale = new double[3], offset = new double[3];
+            for (int i = 0; i < 3; i++) {
+                scale[i] = header.getDouble(131 + 8 * i);
+                offset[i] = header.getDouble(155 + 8 * i);
+            }
+            final int classificationPosition = pointDataFormat < 6 ? 15 : 16;
+            final int classificationMask = pointDataFormat < 6 ? 0x1F : 0xFF;
+
+            final ByteBuffer block = ByteBuffer.allocate(Math.max(recordLength, BLOCK_SIZE / recordLength * recordLength))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            long position = pointDataOffset;
+            long remaining = numberOfPoints;
+            while (remaining > 0) {
+                block.clear();
+                block.limit((int) Math.min(block.capacity(), remaining * recordLength));
+                while (block.hasRemaining()) {
+                    if (channel.read(block, position + block.position()) < 0) {
+                        throw new IOException("Truncated LAS file: " + fileName);
+                    }
+                }
+                position += block.limit();
+
+                for (int p = 0; p < block.limit(); p += recordLength) {
+                    if (keep == null || keep[block.get(p + classificationPosition) & classificationMask]) {
+                        consumer.accept(
+                                block.getInt(p) * scale[0] + offset[0],
+                                block.getInt(p + 4) * scale[1] + offset[1],
+                                block.getInt(p + 8) * scale[2] + offset[2]
+                        );
+                    }
+                }
+                remaining -= block.limit() / recordLength;
+            }
+        }
+    }
+}
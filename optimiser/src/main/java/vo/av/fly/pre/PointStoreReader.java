@@ -0,0 +1,117 @@
+package vo.av.fly.pre;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reader of the points of a local point store, as written by the {@code BuildPointStore} converter of the
+ * evaluator, which this module does not depend on.
+ * <p>
+ * Each store file holds chunks of points, by columns of big-endian int32 coordinates {@code X} such that
+ * {@code x = X * scale + offset}, followed by the index of the chunks (with their bounding boxes), the position of the
+ * index and a magic number.
+ */
+public class PointStoreReader {
+    private static final int MAGIC = 0x464F5053; // "FOPS"
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = 8 + 4;
+    private static final int CHUNK_ENTRY_SIZE = 8 + 4 + 6 * 8; // position, count, bounds
+
+    private PointStoreReader() {
+    }
+
+    /**
+     * Read the points of a point store within a bounding box: a store file, or a directory of store files as written
+     * by the converter, one per partition.
+     *
+     * @param path
+     * @param bbox min x, min y, max x, max y, or null to read all the points
+     * @param consumer
+     * @throws IOException if not a point store
+     */
+    public static void readAll(String path, double[] bbox, PointParser.PointConsumer consumer) throws IOException {
+        final File[] files = new File(path).listFiles((dir, name) -> name.toLowerCase().endsWith(".pstore"));
+        if (files == null) {
+            read(path, bbox, consumer);
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            read(file.getPath(), bbox, consumer);
+        }
+    }
+
+    /**
+     * Read the points of a file within a bounding box, skipping the chunks outside it.
+     *
+     * @param fileName
+     * @param bbox min x, min y, max x, max y, or null to read all the points
+     * @param consumer
+     * @throws IOException if not a point store
+     */
+    public static void read(String fileName, double[] bbox, PointParser.PointConsumer consumer) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            final FileChannel channel = file.getChannel();
+
+            final ByteBuffer trailer = readFully(channel, channel.size() - TRAILER_SIZE, TRAILER_SIZE, fileName);
+            final long indexPosition = trailer.getLong(0);
+            if (trailer.getInt(8) != MAGIC) {
+                throw new IOException("Not a point store: " + fileName);
+            }
+
+            final ByteBuffer index = readFully(
+                    channel, indexPosition, (int) (channel.size() - TRAILER_SIZE - indexPosition), fileName
+            );
+            if (index.getInt() != MAGIC) {
+                throw new IOException("Not a point store: " + fileName);
+            }
+            final int version = index.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported point store version " + version + ": " + fileName);
+            }
+            final double[] scale = new double[3], offset = new double[3];
+            for (int i = 0; i < 3; i++) {
+                scale[i] = index.getDouble();
+            }
+            for (int i = 0; i < 3; i++) {
+                offset[i] = index.getDouble();
+            }
+
+            final int chunkCount = index.getInt();
+            for (int c = 0; c < chunkCount; c++) {
+                final int entry = index.position() + c * CHUNK_ENTRY_SIZE;
+                final long position = index.getLong(entry);
+                final int count = index.getInt(entry + 8);
+                if (bbox != null && (index.getDouble(entry + 12) > bbox[2] || index.getDouble(entry + 36) < bbox[0]
+                        || index.getDouble(entry + 20) > bbox[3] || index.getDouble(entry + 44) < bbox[1])) {
+                    continue;
+                }
+
+                final ByteBuffer chunk = readFully(channel, position, 3 * 4 * count, fileName);
+                for (int i = 0; i < count; i++) {
+                    final double x = chunk.getInt(4 * i) * scale[0] + offset[0];
+                    final double y = chunk.getInt(4 * (count + i)) * scale[1] + offset[1];
+                    if (bbox == null || (x >= bbox[0] && x <= bbox[2] && y >= bbox[1] && y <= bbox[3])) {
+                        consumer.accept(x, y, chunk.getInt(4 * (2 * count + i)) * scale[2] + offset[2]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length, String fileName)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length); // big-endian
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated point store: " + fileName);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,23 +29,31 @@ public class PruneFacadePoints {
 
         long start, stop;
 
-        BufferedReader reader = new BufferedReader(new FileReader(inFN));
+        final double[] bbox = cmd.hasOption("bbox")
+                ? Arrays.stream(cmd.getOptionValues("bbox")).mapToDouble(Double::parseDouble).toArray()
+                : null;
 
-        List<Entry<Double, Point>> entries = new ArrayList();
+        final List<Entry<Double, Point>> entries = new ArrayList();
+        final PointParser.PointConsumer addEntry = (x, y, z) -> {
+            if (bbox == null || (x >= bbox[0] && x <= bbox[2] && y >= bbox[1] && y <= bbox[3])) {
+                entries.add(Entry.entry(z, Point.create(x, y)));
+            }
+        };
 
-        String line;
         start = System.currentTimeMillis();
-        while( (line = reader.readLine()) != null){
-            String[] tokens = line.split(",");
-
-            Point pt = Point.create(
-                    Double.parseDouble(tokens[0]),
-                    Double.parseDouble(tokens[1])
-            );
-
-            entries.add(Entry.entry(Double.parseDouble(tokens[2]), pt));
+        if (inFN.toLowerCase().endsWith(".pstore")) {
+            PointStoreReader.readAll(inFN, bbox, addEntry);
+        } else if (inFN.toLowerCase().endsWith(".las") || inFN.toLowerCase().endsWith(".laz")) {
+            int[] classes = null;
+            if (cmd.hasOption("classes")) {
+                classes = Arrays.stream(cmd.getOptionValues("classes")).mapToInt(c -> Integer.parseInt(c.trim())).toArray();
+            }
+            LasReader.read(inFN, classes, addEntry);
+        } else {
+            InputStream in = new FileInputStream(inFN);
+            PointParser.read(in, addEntry);
+            in.close();
         }
-        reader.close();
         stop = System.currentTimeMillis();
         LOG.debug(String.format("parse input file: %d ms", stop-start));
         LOG.info(String.format("num input points: %d", entries.size()));
@@ -95,7 +104,18 @@ public class PruneFacadePoints {
 
         Option o;
 
-        o = new Option("i", "input", true, "input point cloud file in text format");
+        o = new Option("i", "input", true, "input point cloud file in text, LAS or point store format");
+        options.addOption(o);
+
+        o = new Option("classes", true, "LAS classifications of the points to keep (optional)");
+        o.setArgs(Option.UNLIMITED_VALUES);
+        o.setRequired(false);
+        options.addOption(o);
+
+        o = new Option("bbox", true, "horizontal bounding box of the points to read (optional)");
+        o.setArgName("minX, minY, maxX, maxY");
+        o.setArgs(4);
+        o.setRequired(false);
         options.addOption(o);
 
         o = new Option("o", "output", true, "output file");